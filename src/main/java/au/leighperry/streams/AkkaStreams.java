@@ -10,10 +10,15 @@ import akka.japi.function.Function6;
 import akka.japi.function.Function7;
 import akka.japi.function.Function8;
 import akka.japi.function.Function9;
+import akka.stream.Materializer;
+import akka.stream.SourceShape;
+import akka.stream.javadsl.GraphDSL;
+import akka.stream.javadsl.Keep;
 import akka.stream.javadsl.Source;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.stream.Stream;
 
 import static java.util.Arrays.asList;
@@ -26,6 +31,11 @@ public class AkkaStreams {
         R apply(Object... args);
     }
 
+    /** Event-time timestamp of a stream element, in whatever units the caller chooses */
+    public interface TimestampExtractor<T> {
+        long timestampOf(T element);
+    }
+
     /**
      * Compensate for missing operator from Akka Streams. Some ugliness working around lack of combineLatest() operator:
      * <p>
@@ -37,17 +47,9 @@ public class AkkaStreams {
         final FunctionN<? extends R> combineFunction
     ) {
         final int size = sources.size();
-        final int[] i = { 0 };
 
         // Reduce: merge the content streams into one stream, tagging each data element with an integer.
-        final Source<? extends Pair<Integer, ? extends T>, NotUsed> merged =
-            CollectionUtil.streamOf(sources)
-                .map(source -> {
-                    int index = i[0]++;
-                    return source.map(e -> Pair.create(index, e));
-                })
-                .reduce(Source::merge)
-                .get();     // Optional always exists
+        final Source<? extends Pair<Integer, ? extends T>, NotUsed> merged = mergeTagged(sources);
 
         // Scan: combine the merged stream by scanning along it accumulating an array of objects
         // from each stream and then combining to a R result
@@ -57,6 +59,123 @@ public class AkkaStreams {
             .map(combineFunction::apply);
     }
 
+    /**
+     * Precompiled combineLatest() for the given arity and combine function, for cheaply materializing the same pipeline
+     * many times over different sources.
+     */
+    public static <T, R> CombineLatestBlueprint<T, R> combineLatestBlueprint(
+        final int size,
+        final FunctionN<? extends R> combineFunction
+    ) {
+        return new CombineLatestBlueprint<>(size, combineFunction);
+    }
+
+    /**
+     * combineLatest() that materializes live per-input metrics: update counts, time since each input last produced,
+     * arrival rates and how long the output waited for every input to become available.
+     */
+    public static <T, R> Source<R, CombineLatestMetrics> combineLatestInstrumented(
+        final Collection<? extends Source<? extends T, NotUsed>> sources,
+        final FunctionN<? extends R> combineFunction
+    ) {
+        final Source<Pair<Integer, T>, NotUsed> merged = (Source<Pair<Integer, T>, NotUsed>) mergeTagged(sources);
+        return merged.viaMat(new CombineLatestStage<T, R>(sources.size(), combineFunction), Keep.right());
+    }
+
+    /**
+     * combineLatest() that checkpoints its latest input values, and on materialization resumes from the last
+     * checkpoint if recent enough, so output does not wait for every input to produce again after a restart.
+     */
+    public static <T, R> Source<R, CombineLatestMetrics> combineLatestCheckpointed(
+        final Collection<? extends Source<? extends T, NotUsed>> sources,
+        final FunctionN<? extends R> combineFunction,
+        final CombineLatestCheckpoint<? super T> checkpoint
+    ) {
+        final Source<Pair<Integer, T>, NotUsed> merged = (Source<Pair<Integer, T>, NotUsed>) mergeTagged(sources);
+        return merged.viaMat(new CombineLatestStage<T, R>(sources.size(), combineFunction, checkpoint), Keep.right());
+    }
+
+    /**
+     * combineLatest() where sources are merged by priority rather than equally: under load, elements from higher
+     * priority sources are combined first, while lower priority sources still make progress. See {@link PriorityMerge}.
+     *
+     * @param priorities priority of each source, in the same order, higher values served first
+     */
+    public static <T, R> Source<R, PriorityMerge.Metrics> combineLatestPrioritized(
+        final List<? extends Source<? extends T, NotUsed>> sources,
+        final int[] priorities,
+        final FunctionN<? extends R> combineFunction
+    ) {
+        return combineLatestPrioritized(sources, priorities, PriorityMerge.DEFAULT_STARVATION_LIMIT, combineFunction);
+    }
+
+    public static <T, R> Source<R, PriorityMerge.Metrics> combineLatestPrioritized(
+        final List<? extends Source<? extends T, NotUsed>> sources,
+        final int[] priorities,
+        final int starvationLimit,
+        final FunctionN<? extends R> combineFunction
+    ) {
+        final int size = sources.size();
+        if (priorities.length != size) {
+            throw new IllegalArgumentException("Expecting one priority per source, received " + priorities.length + " for " + size);
+        }
+
+        // Tag each data element with an integer, feeding each source into its own input of the priority merge
+        final Source<Pair<Integer, T>, PriorityMerge.Metrics> merged =
+            Source.fromGraph(
+                GraphDSL.create(
+                    new PriorityMerge<Pair<Integer, T>>(priorities, starvationLimit),
+                    (builder, merge) -> {
+                        for (int i = 0; i < size; i++) {
+                            final int index = i;
+                            final Source<Pair<Integer, T>, NotUsed> tagged =
+                                sources.get(index).map(e -> Pair.create(index, (T) e));
+                            builder.from(builder.add(tagged)).toInlet(merge.in(index));
+                        }
+                        return SourceShape.of(merge.out());
+                    }
+                )
+            );
+
+        return merged
+            .scan(new Object[size], AkkaStreams::aggregate)
+            .filter(AkkaStreams::areAllAvailable)
+            .map(combineFunction::apply);
+    }
+
+    /**
+     * Event-time aligned alternative to combineLatest(). Rather than combining in arrival order, emits for each event
+     * timestamp the combination of every source's latest value at or before that timestamp. Sources may arrive out of
+     * order by up to {@code lateness}, in timestamp units; see {@link AsOfJoin}.
+     *
+     * @param timestampExtractors one per source, in the same order
+     */
+    public static <T, R> Source<R, NotUsed> asOfJoin(
+        final List<? extends Source<? extends T, NotUsed>> sources,
+        final List<? extends TimestampExtractor<? super T>> timestampExtractors,
+        final long lateness,
+        final AsOfJoin.LatePolicy latePolicy,
+        final FunctionN<? extends R> combineFunction
+    ) {
+        if (sources.size() != timestampExtractors.size()) {
+            throw new IllegalArgumentException(
+                "Expecting one timestamp extractor per source, received " + timestampExtractors.size() + " for " + sources.size()
+            );
+        }
+
+        final Source<Pair<Integer, T>, NotUsed> merged = (Source<Pair<Integer, T>, NotUsed>) mergeTagged(sources);
+        return merged.via(new AsOfJoin<T, R>(timestampExtractors, lateness, latePolicy, combineFunction));
+    }
+
+    /**
+     * Materialize a source once, typically a combineLatest() result, and share it between subscribers. Each subscriber
+     * immediately receives the latest value on attaching rather than waiting for every input to produce again.
+     * The shared source runs until it terminates or the hub is closed.
+     */
+    public static <R> ReplayLatestHub<R> replayLatest(final Source<R, NotUsed> source, final Materializer materializer) {
+        return new ReplayLatestHub<>(source, materializer);
+    }
+
     public static <T0, T1, R> Source<R, NotUsed> combineLatest(
         final Source<? extends T0, NotUsed> s0,
         final Source<? extends T1, NotUsed> s1,
@@ -292,6 +411,20 @@ public class AkkaStreams {
         };
     }
 
+    /** Merge the content streams into one stream, tagging each data element with the index of its stream */
+    private static <T> Source<? extends Pair<Integer, ? extends T>, NotUsed> mergeTagged(
+        final Collection<? extends Source<? extends T, NotUsed>> sources
+    ) {
+        final int[] i = { 0 };
+        return CollectionUtil.streamOf(sources)
+            .map(source -> {
+                int index = i[0]++;
+                return source.map(e -> Pair.create(index, e));
+            })
+            .reduce(Source::merge)
+            .get();     // Optional always exists
+    }
+
     private static <T> Object[] aggregate(final Object[] previousState, final Pair<Integer, ? extends T> p) {
         final int streamId = p.first();
         final Object[] newState = Arrays.copyOf(previousState, previousState.length);
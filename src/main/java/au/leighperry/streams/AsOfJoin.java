@@ -0,0 +1,186 @@
+package au.leighperry.streams;
+
+import akka.japi.Pair;
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Event-time as-of join of N tagged streams. For each distinct event timestamp, once no earlier data can still
+ * arrive, emits the combination of the as-of value from every stream ie the latest value at or before that
+ * timestamp. Timestamps for which some stream has no value yet are skipped.
+ * <p>
+ * Events may arrive out of order by up to {@code lateness} behind the latest timestamp seen on any stream. Each
+ * stream's buffer only holds its as-of value plus events inside that lateness window, so memory is bounded by
+ * lateness rather than stream length. Events arriving later than that are handled according to {@link LatePolicy}.
+ * On upstream completion, all remaining timestamps are emitted.
+ *
+ * @param <T> the element type
+ * @param <R> the combined result type
+ */
+@SuppressWarnings( { "unchecked", "rawtypes" })
+public class AsOfJoin<T, R> extends GraphStage<FlowShape<Pair<Integer, T>, R>> {
+    /** Handling of events whose timestamp has already been emitted */
+    public enum LatePolicy {
+        /** Discard the event */
+        DROP,
+        /** Fail the stream */
+        FAIL,
+        /** Use the event as its stream's as-of value for subsequent timestamps, if newer, without re-emitting */
+        APPLY
+    }
+
+    private final Inlet<Pair<Integer, T>> in = Inlet.create("AsOfJoin.in");
+    private final Outlet<R> out = Outlet.create("AsOfJoin.out");
+    private final FlowShape<Pair<Integer, T>, R> shape = FlowShape.of(in, out);
+
+    private final List<? extends AkkaStreams.TimestampExtractor<? super T>> timestampExtractors;
+    private final long lateness;
+    private final LatePolicy latePolicy;
+    private final AkkaStreams.FunctionN<? extends R> combineFunction;
+
+    public AsOfJoin(
+        final List<? extends AkkaStreams.TimestampExtractor<? super T>> timestampExtractors,
+        final long lateness,
+        final LatePolicy latePolicy,
+        final AkkaStreams.FunctionN<? extends R> combineFunction
+    ) {
+        if (lateness < 0) {
+            throw new IllegalArgumentException("lateness >= 0 required");
+        }
+        this.timestampExtractors = timestampExtractors;
+        this.lateness = lateness;
+        this.latePolicy = latePolicy;
+        this.combineFunction = combineFunction;
+    }
+
+    @Override
+    public FlowShape<Pair<Integer, T>, R> shape() {
+        return shape;
+    }
+
+    @Override
+    public GraphStageLogic createLogic(final Attributes inheritedAttributes) {
+        final int size = timestampExtractors.size();
+        final TreeMap<Long, Object>[] buffers = new TreeMap[size];
+        for (int i = 0; i < size; i++) {
+            buffers[i] = new TreeMap<>();
+        }
+
+        return new GraphStageLogic(shape) {
+            // Timestamps not yet emitted, and the watermark at or below which everything has been emitted
+            private final TreeSet<Long> pending = new TreeSet<>();
+            private long emittedUpTo = Long.MIN_VALUE;
+            private long maxTimestamp = Long.MIN_VALUE;
+
+            {
+                setHandler(
+                    in,
+                    new AbstractInHandler() {
+                        @Override
+                        public void onPush() {
+                            final List<R> results = onElement(grab(in));
+                            if (results.isEmpty()) {
+                                pull(in);
+                            } else {
+                                emitMultiple(out, results.iterator());
+                            }
+                        }
+
+                        @Override
+                        public void onUpstreamFinish() {
+                            emitMultiple(out, emitUpTo(Long.MAX_VALUE).iterator());
+                            completeStage();
+                        }
+                    }
+                );
+
+                setHandler(
+                    out,
+                    new AbstractOutHandler() {
+                        @Override
+                        public void onPull() {
+                            pull(in);
+                        }
+                    }
+                );
+            }
+
+            private List<R> onElement(final Pair<Integer, T> p) {
+                final int streamId = p.first();
+                final long timestamp = timestampExtractors.get(streamId).timestampOf(p.second());
+
+                if (timestamp <= emittedUpTo) {
+                    switch (latePolicy) {
+                        case FAIL:
+                            throw new IllegalStateException(
+                                "Late event on stream " + streamId + " at " + timestamp + ", already emitted up to " + emittedUpTo
+                            );
+                        case APPLY:
+                            buffers[streamId].put(timestamp, p.second());
+                            prune();
+                            break;
+                        case DROP:
+                        default:
+                            break;
+                    }
+                    return Collections.emptyList();
+                }
+
+                buffers[streamId].put(timestamp, p.second());
+                pending.add(timestamp);
+                maxTimestamp = Math.max(maxTimestamp, timestamp);
+
+                return emitUpTo(maxTimestamp - lateness);
+            }
+
+            private List<R> emitUpTo(final long watermark) {
+                final List<R> results = new ArrayList<>();
+                while (!pending.isEmpty() && pending.first() <= watermark) {
+                    final long timestamp = pending.pollFirst();
+
+                    final Object[] args = new Object[size];
+                    boolean allAvailable = true;
+                    for (int i = 0; i < size && allAvailable; i++) {
+                        final Map.Entry<Long, Object> asOf = buffers[i].floorEntry(timestamp);
+                        allAvailable = asOf != null;
+                        if (allAvailable) {
+                            args[i] = asOf.getValue();
+                        }
+                    }
+                    if (allAvailable) {
+                        results.add(combineFunction.apply(args));
+                    }
+                }
+
+                if (watermark > emittedUpTo) {
+                    emittedUpTo = watermark;
+                    prune();
+                }
+                return results;
+            }
+
+            /** Discard everything older than each stream's as-of value at the watermark */
+            private void prune() {
+                for (final TreeMap<Long, Object> buffer : buffers) {
+                    final Long asOf = buffer.floorKey(emittedUpTo);
+                    if (asOf != null) {
+                        buffer.headMap(asOf, false).clear();
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,171 @@
+package au.leighperry.streams;
+
+import akka.NotUsed;
+import akka.stream.Attributes;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.SourceShape;
+import akka.stream.UniformFanInShape;
+import akka.stream.javadsl.GraphDSL;
+import akka.stream.javadsl.Source;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reusable, precompiled combineLatest() for a fixed arity and combine function, for pipelines that are materialized
+ * many times. Rather than a merge chain, a tagging map per source and scan/filter/map, the whole operator is one
+ * N-input stage built once, so each materialization only wires the given sources into it.
+ * <p>
+ * Emits one combination per input element once every source has produced, like combineLatest(), taking waiting
+ * inputs in turn. Completes when all sources have completed.
+ *
+ * @param <T> the element type
+ * @param <R> the combined result type
+ */
+@SuppressWarnings( { "unchecked", "rawtypes" })
+public class CombineLatestBlueprint<T, R> {
+    private final int size;
+    private final CombineLatestFanIn stage;
+
+    public CombineLatestBlueprint(final int size, final AkkaStreams.FunctionN<? extends R> combineFunction) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size > 0 required");
+        }
+        this.size = size;
+        this.stage = new CombineLatestFanIn(combineFunction);
+    }
+
+    /** @param sources exactly as many sources as the blueprint's arity */
+    public Source<R, NotUsed> source(final List<? extends Source<? extends T, NotUsed>> sources) {
+        if (sources.size() != size) {
+            throw new IllegalArgumentException("Blueprint expecting " + size + " sources, received " + sources.size());
+        }
+
+        return Source.fromGraph(
+            GraphDSL.create(
+                stage,
+                (builder, fanIn) -> {
+                    for (int i = 0; i < size; i++) {
+                        builder.from(builder.add((Source<T, NotUsed>) sources.get(i))).toInlet(fanIn.in(i));
+                    }
+                    return SourceShape.of(fanIn.out());
+                }
+            )
+        );
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    private class CombineLatestFanIn extends GraphStage<UniformFanInShape<T, R>> {
+        private final Inlet<T>[] ins = new Inlet[size];
+        private final Outlet<R> out = Outlet.create("CombineLatestBlueprint.out");
+        private final UniformFanInShape<T, R> shape;
+        private final AkkaStreams.FunctionN<? extends R> combineFunction;
+
+        CombineLatestFanIn(final AkkaStreams.FunctionN<? extends R> combineFunction) {
+            for (int i = 0; i < size; i++) {
+                ins[i] = Inlet.create("CombineLatestBlueprint.in" + i);
+            }
+            this.shape = new UniformFanInShape<>(out, ins);
+            this.combineFunction = combineFunction;
+        }
+
+        @Override
+        public UniformFanInShape<T, R> shape() {
+            return shape;
+        }
+
+        @Override
+        public GraphStageLogic createLogic(final Attributes inheritedAttributes) {
+            return new GraphStageLogic(shape) {
+                private final Object[] slots = new Object[size];
+                private int availableCount;
+                private int runningUpstreams = size;
+                private int nextInput;
+
+                {
+                    for (int i = 0; i < size; i++) {
+                        final int input = i;
+                        setHandler(
+                            ins[input],
+                            new AbstractInHandler() {
+                                @Override
+                                public void onPush() {
+                                    if (isAvailable(out)) {
+                                        dispatch();
+                                    }
+                                }
+
+                                @Override
+                                public void onUpstreamFinish() {
+                                    runningUpstreams--;
+                                    completeIfDone();
+                                }
+                            }
+                        );
+                    }
+
+                    setHandler(
+                        out,
+                        new AbstractOutHandler() {
+                            @Override
+                            public void onPull() {
+                                dispatch();
+                            }
+                        }
+                    );
+                }
+
+                @Override
+                public void preStart() {
+                    for (final Inlet<T> in : ins) {
+                        pull(in);
+                    }
+                }
+
+                /** Take waiting inputs in turn until one produces an output or none are waiting */
+                private void dispatch() {
+                    for (int n = 0; n < size; n++) {
+                        final int input = nextInput;
+                        nextInput = (nextInput + 1) % size;
+                        if (!isAvailable(ins[input])) {
+                            continue;
+                        }
+
+                        if (slots[input] == null) {
+                            availableCount++;
+                        }
+                        slots[input] = grab(ins[input]);
+                        if (!isClosed(ins[input])) {
+                            pull(ins[input]);
+                        }
+
+                        if (availableCount == size) {
+                            push(out, combineFunction.apply(Arrays.copyOf(slots, size)));
+                            break;
+                        }
+                    }
+                    completeIfDone();
+                }
+
+                private void completeIfDone() {
+                    if (runningUpstreams == 0) {
+                        for (final Inlet<T> in : ins) {
+                            if (isAvailable(in)) {
+                                return;
+                            }
+                        }
+                        completeStage();
+                    }
+                }
+            };
+        }
+    }
+}
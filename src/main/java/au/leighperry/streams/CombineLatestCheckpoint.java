@@ -0,0 +1,179 @@
+package au.leighperry.streams;
+
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Checkpointing configuration for combineLatest(), so that after a restart output resumes from the last known value of
+ * each input rather than waiting for every input to produce again.
+ * <p>
+ * The slot array is periodically written through an {@link EventCodec} to a compact memory-mapped file, and read back
+ * on the next materialization if it is no older than {@code maxAge}. The file holds two regions written alternately,
+ * with a header word flipped after each write, so a crash mid-write leaves the previous snapshot intact.
+ *
+ * @param <T> the element type
+ */
+public class CombineLatestCheckpoint<T> {
+    private static final int MAGIC = 0x434c5331;     // "CLS1"
+    private static final int MAGIC_OFFSET = 0;
+    private static final int ACTIVE_REGION_OFFSET = 4;
+    private static final int HEADER_LENGTH = 8;
+
+    // Within each region
+    private static final int TIMESTAMP_OFFSET = 0;
+    private static final int SLOT_COUNT_OFFSET = 8;
+    private static final int SLOTS_OFFSET = 12;
+    private static final int NULL_SLOT = -1;
+
+    private final File file;
+    private final int capacity;
+    private final EventCodec<T> codec;
+    private final FiniteDuration interval;
+    private final FiniteDuration maxAge;
+
+    /**
+     * @param file     the snapshot file, created if absent
+     * @param capacity the file size in bytes; each of the two regions must fit all encoded slots
+     * @param codec    encodes and decodes slot values
+     * @param interval how often to write a snapshot, if any slot has changed
+     * @param maxAge   snapshots older than this are ignored on restore
+     */
+    public CombineLatestCheckpoint(
+        final File file,
+        final int capacity,
+        final EventCodec<T> codec,
+        final FiniteDuration interval,
+        final FiniteDuration maxAge
+    ) {
+        if (capacity <= HEADER_LENGTH + 2 * SLOTS_OFFSET) {
+            throw new IllegalArgumentException("capacity too small: " + capacity);
+        }
+        this.file = file;
+        this.capacity = capacity;
+        this.codec = codec;
+        this.interval = interval;
+        this.maxAge = maxAge;
+    }
+
+    public FiniteDuration getInterval() {
+        return interval;
+    }
+
+    /** Maps the snapshot file, creating it if absent or of the wrong size */
+    public SnapshotFile open() {
+        return new SnapshotFile();
+    }
+
+    /** A mapped snapshot file. Not thread-safe. */
+    public class SnapshotFile implements AutoCloseable {
+        private final MappedByteBuffer mappedBuffer;
+        private final UnsafeBuffer buffer;
+        private final int regionLength;
+        private final ExpandableArrayBuffer encodeBuffer = new ExpandableArrayBuffer();
+
+        private SnapshotFile() {
+            if (file.exists() && file.length() == capacity) {
+                mappedBuffer = IoUtil.mapExistingFile(file, "combineLatest snapshot");
+            } else {
+                IoUtil.deleteIfExists(file);
+                mappedBuffer = IoUtil.mapNewFile(file, capacity);
+            }
+            buffer = new UnsafeBuffer(mappedBuffer);
+            regionLength = (capacity - HEADER_LENGTH) / 2;
+        }
+
+        /**
+         * Reads the latest snapshot. The file is not trusted: a truncated, corrupt or foreign file, or slots the
+         * codec cannot decode, count as no usable snapshot rather than failing the stream.
+         *
+         * @return the slot values, with null for slots that had not produced, or null if there is no usable snapshot
+         * ie none written, too old, for a different number of slots, or unreadable
+         */
+        public Object[] restore(final int slotCount) {
+            if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+                return null;
+            }
+
+            final int active = buffer.getIntVolatile(ACTIVE_REGION_OFFSET);
+            if (active != 0 && active != 1) {
+                return null;
+            }
+            final int region = regionOffset(active);
+            final int regionEnd = region + regionLength;
+            final long ageMillis = System.currentTimeMillis() - buffer.getLong(region + TIMESTAMP_OFFSET);
+            if (ageMillis > maxAge.toMillis() || buffer.getInt(region + SLOT_COUNT_OFFSET) != slotCount) {
+                return null;
+            }
+
+            final Object[] slots = new Object[slotCount];
+            int offset = region + SLOTS_OFFSET;
+            try {
+                for (int i = 0; i < slotCount; i++) {
+                    if (regionEnd - offset < Integer.BYTES) {
+                        return null;
+                    }
+                    final int length = buffer.getInt(offset);
+                    offset += Integer.BYTES;
+                    if (length != NULL_SLOT) {
+                        if (length < 0 || length > regionEnd - offset) {
+                            return null;
+                        }
+                        slots[i] = codec.decode(buffer, offset, length);
+                        offset += length;
+                    }
+                }
+            } catch (final RuntimeException e) {
+                return null;
+            }
+            return slots;
+        }
+
+        /**
+         * Writes a snapshot to the inactive region, then makes it the active one.
+         *
+         * @throws IllegalStateException if the encoded slots do not fit in a region
+         */
+        @SuppressWarnings("unchecked")
+        public void save(final Object[] slots) {
+            int length = 0;
+            for (final Object slot : slots) {
+                if (slot == null) {
+                    encodeBuffer.putInt(length, NULL_SLOT);
+                    length += Integer.BYTES;
+                } else {
+                    final int encodedLength = codec.encode((T) slot, encodeBuffer, length + Integer.BYTES);
+                    encodeBuffer.putInt(length, encodedLength);
+                    length += Integer.BYTES + encodedLength;
+                }
+            }
+            if (SLOTS_OFFSET + length > regionLength) {
+                throw new IllegalStateException(
+                    "Snapshot of " + length + " bytes exceeds region capacity " + (regionLength - SLOTS_OFFSET)
+                );
+            }
+
+            final int inactive = buffer.getInt(MAGIC_OFFSET) == MAGIC ? 1 - buffer.getInt(ACTIVE_REGION_OFFSET) : 0;
+            final int region = regionOffset(inactive);
+            buffer.putLong(region + TIMESTAMP_OFFSET, System.currentTimeMillis());
+            buffer.putInt(region + SLOT_COUNT_OFFSET, slots.length);
+            buffer.putBytes(region + SLOTS_OFFSET, encodeBuffer, 0, length);
+
+            buffer.putIntOrdered(ACTIVE_REGION_OFFSET, inactive);
+            buffer.putIntOrdered(MAGIC_OFFSET, MAGIC);
+        }
+
+        @Override
+        public void close() {
+            IoUtil.unmap(mappedBuffer);
+        }
+
+        private int regionOffset(final int region) {
+            return HEADER_LENGTH + region * regionLength;
+        }
+    }
+}
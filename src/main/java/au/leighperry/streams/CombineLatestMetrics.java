@@ -0,0 +1,77 @@
+package au.leighperry.streams;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Live per-input metrics of a combineLatest() stage, for finding which input is lagging or silent. Written by the
+ * stage without allocation, readable from any thread. Times are from System.nanoTime().
+ */
+public class CombineLatestMetrics {
+    // Weight of each new inter-arrival interval in the moving average, as a shift ie 1/8
+    private static final int EWMA_SHIFT = 3;
+
+    private final int slotCount;
+    private final AtomicLongArray updateCounts;
+    private final AtomicLongArray lastUpdateNanos;
+    private final AtomicLongArray meanIntervalNanos;
+    private volatile long startNanos;
+    private volatile long firstEmissionNanos;
+
+    public CombineLatestMetrics(final int slotCount) {
+        this.slotCount = slotCount;
+        this.updateCounts = new AtomicLongArray(slotCount);
+        this.lastUpdateNanos = new AtomicLongArray(slotCount);
+        this.meanIntervalNanos = new AtomicLongArray(slotCount);
+    }
+
+    void recordStart(final long nowNanos) {
+        startNanos = nowNanos;
+    }
+
+    // Single writer, so ordered puts suffice
+    void recordUpdate(final int slot, final long nowNanos) {
+        final long count = updateCounts.get(slot);
+        if (count == 1) {
+            meanIntervalNanos.lazySet(slot, nowNanos - lastUpdateNanos.get(slot));
+        } else if (count > 1) {
+            final long mean = meanIntervalNanos.get(slot);
+            meanIntervalNanos.lazySet(slot, mean + ((nowNanos - lastUpdateNanos.get(slot) - mean) >> EWMA_SHIFT));
+        }
+        lastUpdateNanos.lazySet(slot, nowNanos);
+        updateCounts.lazySet(slot, count + 1);
+    }
+
+    void recordEmission(final long nowNanos) {
+        if (firstEmissionNanos == 0) {
+            firstEmissionNanos = nowNanos;
+        }
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public long getUpdateCount(final int slot) {
+        return updateCounts.get(slot);
+    }
+
+    /** @return nanoseconds since the input last produced, or -1 if it never has */
+    public long getNanosSinceLastUpdate(final int slot) {
+        return updateCounts.get(slot) == 0 ? -1 : System.nanoTime() - lastUpdateNanos.get(slot);
+    }
+
+    /** @return moving average of the input's arrival rate, or NaN until it has produced twice */
+    public double getUpdatesPerSecond(final int slot) {
+        if (updateCounts.get(slot) < 2) {
+            return Double.NaN;
+        }
+        final long mean = meanIntervalNanos.get(slot);
+        return mean <= 0 ? Double.POSITIVE_INFINITY : 1e9 / mean;
+    }
+
+    /** @return nanoseconds from materialization until every input was available and the first output emitted, or -1 if not yet */
+    public long getTimeToFirstEmissionNanos() {
+        final long first = firstEmissionNanos;
+        return first == 0 ? -1 : first - startNanos;
+    }
+}
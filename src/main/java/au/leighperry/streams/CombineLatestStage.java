@@ -0,0 +1,164 @@
+package au.leighperry.streams;
+
+import akka.japi.Pair;
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.GraphStageWithMaterializedValue;
+import akka.stream.stage.TimerGraphStageLogic;
+import scala.Tuple2;
+
+import java.util.Arrays;
+
+/**
+ * The combining half of combineLatest() as a single stage, in place of scan/filter/map: holds the latest element from
+ * each tagged stream and, once every stream has produced, emits the combination on each element. Materializes
+ * {@link CombineLatestMetrics} for the inputs.
+ * <p>
+ * With a {@link CombineLatestCheckpoint}, slots are pre-seeded from the last snapshot on start, emitting immediately if
+ * that makes every slot available, and snapshotted periodically and on stop.
+ *
+ * @param <T> the element type
+ * @param <R> the combined result type
+ */
+public class CombineLatestStage<T, R>
+    extends GraphStageWithMaterializedValue<FlowShape<Pair<Integer, T>, R>, CombineLatestMetrics> {
+
+    private static final String SNAPSHOT_TIMER = "snapshot";
+
+    private final Inlet<Pair<Integer, T>> in = Inlet.create("CombineLatest.in");
+    private final Outlet<R> out = Outlet.create("CombineLatest.out");
+    private final FlowShape<Pair<Integer, T>, R> shape = FlowShape.of(in, out);
+
+    private final int size;
+    private final AkkaStreams.FunctionN<? extends R> combineFunction;
+    private final CombineLatestCheckpoint<? super T> checkpoint;
+
+    public CombineLatestStage(final int size, final AkkaStreams.FunctionN<? extends R> combineFunction) {
+        this(size, combineFunction, null);
+    }
+
+    /** @param checkpoint snapshot configuration, or null for none */
+    public CombineLatestStage(
+        final int size,
+        final AkkaStreams.FunctionN<? extends R> combineFunction,
+        final CombineLatestCheckpoint<? super T> checkpoint
+    ) {
+        this.size = size;
+        this.combineFunction = combineFunction;
+        this.checkpoint = checkpoint;
+    }
+
+    @Override
+    public FlowShape<Pair<Integer, T>, R> shape() {
+        return shape;
+    }
+
+    @Override
+    public Tuple2<GraphStageLogic, CombineLatestMetrics> createLogicAndMaterializedValue(final Attributes inheritedAttributes) {
+        final CombineLatestMetrics metrics = new CombineLatestMetrics(size);
+
+        final GraphStageLogic logic =
+            new TimerGraphStageLogic(shape) {
+                private final Object[] slots = new Object[size];
+                private int availableCount;
+                private CombineLatestCheckpoint<? super T>.SnapshotFile snapshotFile;
+                private boolean changedSinceSnapshot;
+                private boolean restoredPending;
+
+                {
+                    setHandler(
+                        in,
+                        new AbstractInHandler() {
+                            @Override
+                            public void onPush() {
+                                final Pair<Integer, T> p = grab(in);
+                                final int streamId = p.first();
+                                final long now = System.nanoTime();
+
+                                if (slots[streamId] == null) {
+                                    availableCount++;
+                                }
+                                slots[streamId] = p.second();
+                                changedSinceSnapshot = true;
+                                restoredPending = false;
+                                metrics.recordUpdate(streamId, now);
+
+                                if (availableCount == size) {
+                                    pushCombined(now);
+                                } else {
+                                    pull(in);
+                                }
+                            }
+                        }
+                    );
+
+                    setHandler(
+                        out,
+                        new AbstractOutHandler() {
+                            @Override
+                            public void onPull() {
+                                if (restoredPending) {
+                                    restoredPending = false;
+                                    pushCombined(System.nanoTime());
+                                } else {
+                                    pull(in);
+                                }
+                            }
+                        }
+                    );
+                }
+
+                @Override
+                public void preStart() {
+                    metrics.recordStart(System.nanoTime());
+
+                    if (checkpoint != null) {
+                        snapshotFile = checkpoint.open();
+                        final Object[] restored = snapshotFile.restore(size);
+                        if (restored != null) {
+                            for (int i = 0; i < size; i++) {
+                                if (restored[i] != null) {
+                                    slots[i] = restored[i];
+                                    availableCount++;
+                                }
+                            }
+                            restoredPending = availableCount == size;
+                        }
+                        schedulePeriodically(SNAPSHOT_TIMER, checkpoint.getInterval());
+                    }
+                }
+
+                @Override
+                public void onTimer(final Object timerKey) {
+                    saveSnapshot();
+                }
+
+                @Override
+                public void postStop() {
+                    if (snapshotFile != null) {
+                        saveSnapshot();
+                        snapshotFile.close();
+                    }
+                }
+
+                private void pushCombined(final long now) {
+                    metrics.recordEmission(now);
+                    push(out, combineFunction.apply(Arrays.copyOf(slots, size)));
+                }
+
+                private void saveSnapshot() {
+                    if (changedSinceSnapshot) {
+                        snapshotFile.save(slots);
+                        changedSinceSnapshot = false;
+                    }
+                }
+            };
+
+        return new Tuple2<>(logic, metrics);
+    }
+}
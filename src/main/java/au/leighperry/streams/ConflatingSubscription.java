@@ -0,0 +1,119 @@
+package au.leighperry.streams;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Producer that holds only the most recently offered value and relays it to the subscriber on request.
+ * Values offered while there is no demand replace the held value rather than queueing, so a slow subscriber
+ * only ever sees the latest value.
+ * <p>
+ * Uses the same serialised publishing scheme as {@link StreamsBufferedSubscription}.
+ *
+ * @param <T> the value type
+ */
+public class ConflatingSubscription<T> implements Subscription {
+    final Subscriber<? super T> subscriber;
+    final AtomicReference<T> latest = new AtomicReference<>();
+
+    final AtomicLong requestCounter = new AtomicLong();
+    final AtomicInteger publishInProgressCount = new AtomicInteger();
+    private volatile boolean unsubscribed;
+    private volatile boolean completed;
+    private volatile Throwable error;
+
+    public ConflatingSubscription(final Subscriber<? super T> subscriber) {
+        this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(final long n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n >= 0 required");
+        }
+        if (n > 0) {
+            StreamsBufferedSubscription.getAndAddRequest(requestCounter, n);
+            publishLatest();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        unsubscribed = true;
+        latest.set(null);
+    }
+
+    /**
+     * Replaces the held value and publishes it if the subscriber has outstanding demand.
+     *
+     * @param value the new latest value
+     */
+    public void offer(final T value) {
+        latest.set(value);
+        publishLatest();
+    }
+
+    /** Signals onComplete once any held value has been published */
+    public void complete() {
+        completed = true;
+        publishLatest();
+    }
+
+    /** Signals onError once any held value has been published */
+    public void fail(final Throwable ex) {
+        error = ex;
+        completed = true;
+        publishLatest();
+    }
+
+    public boolean isSubscribed() {
+        return !unsubscribed;
+    }
+
+    private void publishLatest() {
+        if (publishInProgressCount.getAndIncrement() == 0) {
+            // Won right to publish
+            final Subscriber<? super T> c = subscriber;
+            do {
+                if (unsubscribed) {
+                    return;
+                }
+
+                // Detection mechanism for concurrent publishLatest attempt during this loop, ie offer() called
+                publishInProgressCount.lazySet(1);
+
+                if (requestCounter.get() != 0) {
+                    final T v = latest.getAndSet(null);
+                    if (v != null) {
+                        try {
+                            c.onNext(v);
+                        } catch (final Throwable ex) {
+                            unsubscribed = true;
+                            c.onError(ex);
+                            return;
+                        }
+
+                        if (requestCounter.get() != Long.MAX_VALUE) {
+                            requestCounter.decrementAndGet();
+                        }
+                    }
+                }
+
+                if (completed && latest.get() == null && !unsubscribed) {
+                    unsubscribed = true;
+                    final Throwable ex = error;
+                    if (ex == null) {
+                        c.onComplete();
+                    } else {
+                        c.onError(ex);
+                    }
+                    return;
+                }
+            } while (publishInProgressCount.decrementAndGet() != 0);
+        }
+    }
+}
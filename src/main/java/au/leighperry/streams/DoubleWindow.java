@@ -0,0 +1,182 @@
+package au.leighperry.streams;
+
+/**
+ * Fixed capacity FIFO window of timestamped, weighted double values backed by preallocated primitive ring buffers.
+ * Sums are maintained incrementally and min/max by monotonic deques, so adding, evicting and reading aggregates are
+ * all amortised O(1) with no allocation.
+ * <p>
+ * Not thread-safe.
+ */
+public class DoubleWindow {
+    private final int capacity;
+    private final long[] timestamps;
+    private final double[] values;
+    private final double[] weights;
+
+    // Monotonic deques of element sequence numbers: values increasing from head for min, decreasing for max
+    private final long[] minDeque;
+    private final long[] maxDeque;
+
+    // Sequence numbers, mapped to ring slots modulo capacity
+    private long head;
+    private long tail;
+    private long minHead;
+    private long minTail;
+    private long maxHead;
+    private long maxTail;
+
+    private double sum;
+    private double weightSum;
+    private double weightedSum;
+    private long evictionsSinceResum;
+
+    public DoubleWindow(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity > 0 required");
+        }
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+        this.weights = new double[capacity];
+        this.minDeque = new long[capacity];
+        this.maxDeque = new long[capacity];
+    }
+
+    /**
+     * Adds a value as the newest element of the window.
+     *
+     * @throws IllegalStateException if the window is already at capacity
+     */
+    public void add(final long timestamp, final double value, final double weight) {
+        if (size() == capacity) {
+            throw new IllegalStateException("Window capacity " + capacity + " exceeded");
+        }
+
+        final int slot = slot(tail);
+        timestamps[slot] = timestamp;
+        values[slot] = value;
+        weights[slot] = weight;
+
+        sum += value;
+        weightSum += weight;
+        weightedSum += value * weight;
+
+        while (minTail != minHead && values[slot(minDeque[slot(minTail - 1)])] >= value) {
+            minTail--;
+        }
+        minDeque[slot(minTail++)] = tail;
+
+        while (maxTail != maxHead && values[slot(maxDeque[slot(maxTail - 1)])] <= value) {
+            maxTail--;
+        }
+        maxDeque[slot(maxTail++)] = tail;
+
+        tail++;
+    }
+
+    /** Removes the oldest element, if any */
+    public void evictOldest() {
+        if (head == tail) {
+            return;
+        }
+
+        final int slot = slot(head);
+        sum -= values[slot];
+        weightSum -= weights[slot];
+        weightedSum -= values[slot] * weights[slot];
+
+        if (minDeque[slot(minHead)] == head) {
+            minHead++;
+        }
+        if (maxDeque[slot(maxHead)] == head) {
+            maxHead++;
+        }
+        head++;
+
+        // Recompute sums once per capacity evictions to stop floating point error accumulating, amortised O(1)
+        if (++evictionsSinceResum >= capacity) {
+            resum();
+        }
+    }
+
+    /** Removes all elements with a timestamp before {@code timestamp} */
+    public void evictBefore(final long timestamp) {
+        while (head != tail && timestamps[slot(head)] < timestamp) {
+            evictOldest();
+        }
+    }
+
+    public void clear() {
+        head = tail;
+        minHead = minTail;
+        maxHead = maxTail;
+        sum = 0;
+        weightSum = 0;
+        weightedSum = 0;
+        evictionsSinceResum = 0;
+    }
+
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    public double sum() {
+        return sum;
+    }
+
+    /** @return NaN if empty */
+    public double mean() {
+        return isEmpty() ? Double.NaN : sum / size();
+    }
+
+    /** @return the weight-averaged value eg VWAP when weighted by volume, NaN if empty or total weight is zero */
+    public double weightedMean() {
+        return isEmpty() || weightSum == 0 ? Double.NaN : weightedSum / weightSum;
+    }
+
+    /** @return NaN if empty */
+    public double min() {
+        return isEmpty() ? Double.NaN : values[slot(minDeque[slot(minHead)])];
+    }
+
+    /** @return NaN if empty */
+    public double max() {
+        return isEmpty() ? Double.NaN : values[slot(maxDeque[slot(maxHead)])];
+    }
+
+    /** @return the timestamp of the oldest element; undefined if empty */
+    public long oldestTimestamp() {
+        return timestamps[slot(head)];
+    }
+
+    /** @return the timestamp of the newest element; undefined if empty */
+    public long newestTimestamp() {
+        return timestamps[slot(tail - 1)];
+    }
+
+    /** @return a snapshot of the current aggregates */
+    public WindowStats stats() {
+        return new WindowStats(size(), sum(), mean(), weightedMean(), min(), max(), oldestTimestamp(), newestTimestamp());
+    }
+
+    private void resum() {
+        sum = 0;
+        weightSum = 0;
+        weightedSum = 0;
+        for (long seq = head; seq != tail; seq++) {
+            final int slot = slot(seq);
+            sum += values[slot];
+            weightSum += weights[slot];
+            weightedSum += values[slot] * weights[slot];
+        }
+        evictionsSinceResum = 0;
+    }
+
+    private int slot(final long seq) {
+        return (int) (seq % capacity);
+    }
+}
@@ -0,0 +1,32 @@
+package au.leighperry.streams;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+/**
+ * Encodes events to and decodes events from Agrona buffers, for streams whose events leave the heap
+ * (eg shared memory IPC).
+ *
+ * @param <T> the event type
+ */
+public interface EventCodec<T> {
+    /**
+     * Encode an event into a buffer.
+     *
+     * @param event  the event to encode
+     * @param buffer the buffer to write to, which may grow to accommodate the event
+     * @param offset the offset at which to start writing
+     * @return the number of bytes written
+     */
+    int encode(T event, MutableDirectBuffer buffer, int offset);
+
+    /**
+     * Decode an event from a buffer. The buffer is only valid for the duration of the call.
+     *
+     * @param buffer the buffer to read from
+     * @param offset the offset at which the encoded event starts
+     * @param length the number of bytes in the encoded event
+     * @return the decoded event
+     */
+    T decode(DirectBuffer buffer, int offset, int length);
+}
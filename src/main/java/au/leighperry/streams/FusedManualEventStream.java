@@ -0,0 +1,150 @@
+package au.leighperry.streams;
+
+import akka.NotUsed;
+import akka.stream.Attributes;
+import akka.stream.Outlet;
+import akka.stream.SourceShape;
+import akka.stream.javadsl.Source;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.AsyncCallback;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import org.agrona.concurrent.ManyToOneConcurrentLinkedQueue;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Alternative to {@link ManualEventStream} built as a native GraphStage rather than a Reactive Streams publisher.
+ * Source.fromPublisher() puts an async boundary, with its own input buffer, between the producer and the rest of the
+ * graph, whereas this source fuses with downstream stages.
+ * <p>
+ * Inserted events are handed off through a lock-free queue. The stage polls the queue on demand and only needs
+ * waking, via an async callback, when it has run dry with demand outstanding.
+ * <p>
+ * All materializations would share the one queue, so the source may be materialized only once. Further
+ * materializations fail with an {@link IllegalStateException}. Once the stage has stopped, eg downstream cancelled,
+ * queued events are released and further inserts are dropped.
+ */
+public class FusedManualEventStream<T> {
+    private final Queue<T> queue = new ManyToOneConcurrentLinkedQueue<>();
+    private final AtomicBoolean awaitingEvents = new AtomicBoolean();
+    private final AtomicBoolean materialized = new AtomicBoolean();
+    private final AtomicInteger releaseInProgressCount = new AtomicInteger();
+    private volatile AsyncCallback<NotUsed> wakeup;
+    private volatile boolean stopped;
+
+    public Source<T, NotUsed> observe() {
+        return Source.fromGraph(new ManualEventSource());
+    }
+
+    @SafeVarargs
+    public final void insert(final T... event) {
+        if (stopped) {
+            return;
+        }
+        for (final T e : event) {
+            queue.offer(e);
+        }
+
+        if (stopped) {
+            // Raced with the stage stopping, which may have released the queue before these events landed
+            releaseQueued();
+        } else if (awaitingEvents.compareAndSet(true, false)) {
+            wakeup.invoke(NotUsed.getInstance());
+        }
+    }
+
+    /**
+     * @return the number of events inserted and not yet emitted. Traverses the queue, so intended for monitoring
+     * rather than the hot path.
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Discards queued events once the stage has stopped. Any thread may then take the single consumer role of the
+     * queue, so this is serialized as in {@link StreamsBufferedSubscription}.
+     */
+    private void releaseQueued() {
+        if (releaseInProgressCount.getAndIncrement() == 0) {
+            do {
+                releaseInProgressCount.lazySet(1);
+                while (queue.poll() != null) {
+                    // discard
+                }
+            } while (releaseInProgressCount.decrementAndGet() != 0);
+        }
+    }
+
+    private class ManualEventSource extends GraphStage<SourceShape<T>> {
+        private final Outlet<T> out = Outlet.create("ManualEventSource.out");
+        private final SourceShape<T> shape = SourceShape.of(out);
+
+        @Override
+        public SourceShape<T> shape() {
+            return shape;
+        }
+
+        @Override
+        public GraphStageLogic createLogic(final Attributes inheritedAttributes) {
+            return new GraphStageLogic(shape) {
+                {
+                    setHandler(
+                        out,
+                        new AbstractOutHandler() {
+                            @Override
+                            public void onPull() {
+                                pushNext();
+                            }
+                        }
+                    );
+                }
+
+                private boolean owner;
+
+                @Override
+                public void preStart() {
+                    if (!materialized.compareAndSet(false, true)) {
+                        failStage(new IllegalStateException("FusedManualEventStream may only be materialized once"));
+                        return;
+                    }
+                    owner = true;
+                    wakeup =
+                        createAsyncCallback(
+                            notUsed -> {
+                                if (isAvailable(out)) {
+                                    pushNext();
+                                }
+                            }
+                        );
+                }
+
+                @Override
+                public void postStop() {
+                    if (owner) {
+                        stopped = true;
+                        releaseQueued();
+                    }
+                }
+
+                private void pushNext() {
+                    T e = queue.poll();
+                    if (e == null) {
+                        awaitingEvents.set(true);
+
+                        // Recheck, since an insert may have landed before the flag was raised and so not woken us
+                        e = queue.poll();
+                        if (e == null) {
+                            return;
+                        }
+                        awaitingEvents.set(false);
+                    }
+                    push(out, e);
+                }
+            };
+        }
+    }
+}
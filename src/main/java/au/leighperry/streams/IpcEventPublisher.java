@@ -0,0 +1,113 @@
+package au.leighperry.streams;
+
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.IoUtil;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer side of an {@link IpcEventStream}. Attaches to the memory-mapped ring buffer file created by the
+ * consuming process and writes encoded events into it.
+ * <p>
+ * Any number of publishers, in any number of processes, may write to the same file concurrently. A single
+ * publisher instance is not thread-safe, since it reuses one encoding buffer.
+ * <p>
+ * The waiting variants give up with an {@link IllegalStateException} once the consumer has closed or cancelled
+ * its stream, since the ring buffer would then never drain. A consumer that dies without closing is not detected
+ * this way; use {@link #offer(Object, long, TimeUnit)} to bound the wait, or {@link #getConsumerHeartbeatTime()}
+ * to judge its liveness.
+ *
+ * @param <T> the event type
+ */
+public class IpcEventPublisher<T> implements AutoCloseable {
+    private final MappedByteBuffer mappedBuffer;
+    private final RingBuffer ringBuffer;
+    private final EventCodec<? super T> codec;
+    private final MutableDirectBuffer encodeBuffer = new ExpandableArrayBuffer();
+    private final IdleStrategy idleStrategy;
+
+    public IpcEventPublisher(final File file, final EventCodec<? super T> codec) {
+        this(file, codec, new BackoffIdleStrategy(100, 10, 1_000, 1_000_000));
+    }
+
+    public IpcEventPublisher(final File file, final EventCodec<? super T> codec, final IdleStrategy idleStrategy) {
+        this.mappedBuffer = IoUtil.mapExistingFile(file, "ipc event stream");
+        this.ringBuffer = new ManyToOneRingBuffer(new UnsafeBuffer(mappedBuffer));
+        this.codec = codec;
+        this.idleStrategy = idleStrategy;
+    }
+
+    /**
+     * Attempts to write an event to the ring buffer without waiting.
+     *
+     * @param event the event to write
+     * @return true if the event was written, false if the ring buffer is full ie the consumer is behind
+     */
+    public boolean offer(final T event) {
+        final int length = codec.encode(event, encodeBuffer, 0);
+        return ringBuffer.write(IpcEventStream.EVENT_MSG_TYPE_ID, encodeBuffer, 0, length);
+    }
+
+    /**
+     * Writes an event to the ring buffer, backing off while the ring buffer is full for up to the given timeout.
+     *
+     * @return true if the event was written, false if the ring buffer stayed full for the whole timeout
+     * @throws IllegalStateException if the consumer has gone
+     */
+    public boolean offer(final T event, final long timeout, final TimeUnit unit) {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        idleStrategy.reset();
+        while (!offer(event)) {
+            checkConsumer();
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            idleStrategy.idle();
+        }
+        return true;
+    }
+
+    /**
+     * Writes events to the ring buffer, backing off while the ring buffer is full. Since the consumer only drains
+     * the ring buffer as its subscriber requests, this slows the producer to the pace of the stream.
+     *
+     * @throws IllegalStateException if the consumer has gone
+     */
+    @SafeVarargs
+    public final void insert(final T... event) {
+        for (final T e : event) {
+            idleStrategy.reset();
+            while (!offer(e)) {
+                checkConsumer();
+                idleStrategy.idle();
+            }
+        }
+    }
+
+    /**
+     * @return the epoch millis at which the consumer last polled the ring buffer, or
+     * {@link IpcSubscription#NO_CONSUMER} if it has closed
+     */
+    public long getConsumerHeartbeatTime() {
+        return ringBuffer.consumerHeartbeatTime();
+    }
+
+    private void checkConsumer() {
+        if (ringBuffer.consumerHeartbeatTime() == IpcSubscription.NO_CONSUMER) {
+            throw new IllegalStateException("IpcEventStream consumer has closed");
+        }
+    }
+
+    @Override
+    public void close() {
+        IoUtil.unmap(mappedBuffer);
+    }
+}
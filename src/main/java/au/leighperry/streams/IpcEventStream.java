@@ -0,0 +1,114 @@
+package au.leighperry.streams;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Source;
+import org.agrona.IoUtil;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.SystemEpochClock;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+import org.reactivestreams.Subscription;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Akka-stream that emits events written by other processes on the same host, via an Agrona many-to-one ring
+ * buffer in a memory-mapped file. The cross-process counterpart of {@link ManualEventStream}: producers use an
+ * {@link IpcEventPublisher} attached to the same file.
+ * <p>
+ * This side creates the file, so must be constructed before any publisher attaches. An existing file of the
+ * same capacity is reused rather than replaced, so that a restarted consumer picks up the unread events, and
+ * publishers still attached from before the restart keep delivering to it. While open, the stream stamps the
+ * consumer heartbeat time in the ring buffer; closing or cancelling the stream clears it, which publishers see as
+ * the consumer having gone.
+ * <p>
+ * Events are only read from the ring buffer as the subscriber requests them, so a slow stream fills the ring
+ * buffer and pushes back on the producers rather than buffering on the heap.
+ * <p>
+ * The ring buffer has a single consumer, so the stream may be materialized only once. Further materializations
+ * fail with an {@link IllegalStateException}.
+ *
+ * @param <T> the event type
+ */
+public class IpcEventStream<T> implements AutoCloseable {
+    static final int EVENT_MSG_TYPE_ID = 1;
+    private static final Subscription REJECTED =
+        new Subscription() {
+            @Override
+            public void request(final long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        };
+
+    private final File file;
+    private final MappedByteBuffer mappedBuffer;
+    private final RingBuffer ringBuffer;
+    private final EventCodec<? extends T> codec;
+    private final IdleStrategy idleStrategy;
+    private final AtomicBoolean materialized = new AtomicBoolean();
+    private volatile IpcSubscription<T> subscription;
+
+    /**
+     * @param file     the file to create and map, reusing an existing file of the same capacity
+     * @param capacity the ring buffer capacity in bytes, which must be a power of 2
+     * @param codec    decodes the events written by the publishers
+     */
+    public IpcEventStream(final File file, final int capacity, final EventCodec<? extends T> codec) {
+        this(file, capacity, codec, new BackoffIdleStrategy(100, 10, 1_000, 1_000_000));
+    }
+
+    public IpcEventStream(
+        final File file,
+        final int capacity,
+        final EventCodec<? extends T> codec,
+        final IdleStrategy idleStrategy
+    ) {
+        this.file = file;
+        final int length = capacity + RingBufferDescriptor.TRAILER_LENGTH;
+        if (file.length() == length) {
+            this.mappedBuffer = IoUtil.mapExistingFile(file, "ipc event stream");
+        } else {
+            IoUtil.deleteIfExists(file);
+            this.mappedBuffer = IoUtil.mapNewFile(file, length);
+        }
+        this.ringBuffer = new ManyToOneRingBuffer(new UnsafeBuffer(mappedBuffer));
+        ringBuffer.consumerHeartbeatTime(SystemEpochClock.INSTANCE.time());
+        this.codec = codec;
+        this.idleStrategy = idleStrategy;
+    }
+
+    public Source<T, NotUsed> observe() {
+        return Source.fromPublisher(
+            subscriber -> {
+                if (!materialized.compareAndSet(false, true)) {
+                    subscriber.onSubscribe(REJECTED);
+                    subscriber.onError(new IllegalStateException("IpcEventStream may only be materialized once"));
+                    return;
+                }
+                subscription =
+                    new IpcSubscription<>(subscriber, ringBuffer, codec, idleStrategy, "ipc-event-stream-" + file.getName());
+                subscriber.onSubscribe(subscription);
+                subscription.start();
+            }
+        );
+    }
+
+    /** Stops polling, marks the consumer as gone and unmaps the file. The file itself is left in place. */
+    @Override
+    public void close() {
+        if (subscription != null) {
+            subscription.cancel();
+            subscription.awaitStopped();
+        }
+        ringBuffer.consumerHeartbeatTime(IpcSubscription.NO_CONSUMER);
+        IoUtil.unmap(mappedBuffer);
+    }
+}
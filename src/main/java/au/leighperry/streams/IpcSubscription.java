@@ -0,0 +1,149 @@
+package au.leighperry.streams;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.AgentRunner;
+import org.agrona.concurrent.AgentTerminationException;
+import org.agrona.concurrent.ControlledMessageHandler;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.SystemEpochClock;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Subscription that polls a shared memory ring buffer on a dedicated agent thread, relaying decoded events to
+ * the subscriber on request. Nothing is read from the ring buffer while there is no outstanding demand, and once
+ * the subscription ends, whether cancelled or failed, the rest of the batch being read is left in the ring buffer
+ * for the next consumer.
+ * <p>
+ * The consumer heartbeat time in the ring buffer is stamped on each duty cycle, and cleared to
+ * {@link #NO_CONSUMER} once the subscription ends, so publishers can tell that nothing will drain the ring buffer.
+ *
+ * @param <T> the value type
+ */
+public class IpcSubscription<T> implements Subscription, Agent {
+    /** Consumer heartbeat time meaning that no consumer is attached to the ring buffer */
+    public static final long NO_CONSUMER = 0;
+    private static final int MAX_READ_BATCH = 256;
+
+    final Subscriber<? super T> subscriber;
+    final RingBuffer ringBuffer;
+    final EventCodec<? extends T> codec;
+    final String roleName;
+
+    final AtomicLong requestCounter = new AtomicLong();
+    private final ControlledMessageHandler handler = this::onMessage;
+    private int deliveredCount;
+    private final AgentRunner runner;
+    private volatile boolean unsubscribed;
+
+    public IpcSubscription(
+        final Subscriber<? super T> subscriber,
+        final RingBuffer ringBuffer,
+        final EventCodec<? extends T> codec,
+        final IdleStrategy idleStrategy,
+        final String roleName
+    ) {
+        this.subscriber = subscriber;
+        this.ringBuffer = ringBuffer;
+        this.codec = codec;
+        this.roleName = roleName;
+        this.runner = new AgentRunner(idleStrategy, this::onError, null, this);
+    }
+
+    /** Starts the polling thread */
+    public void start() {
+        AgentRunner.startOnThread(runner);
+    }
+
+    /** Waits for the polling thread to exit, after which the ring buffer is no longer accessed */
+    public void awaitStopped() {
+        runner.close();
+    }
+
+    @Override
+    public void request(final long n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n >= 0 required");
+        }
+        if (n > 0) {
+            StreamsBufferedSubscription.getAndAddRequest(requestCounter, n);
+        }
+    }
+
+    @Override
+    public void cancel() {
+        // The agent thread notices and terminates itself, since cancel() may be called from within onNext()
+        unsubscribed = true;
+    }
+
+    public long getRequestCount() {
+        return requestCounter.get();
+    }
+
+    public boolean isSubscribed() {
+        return !unsubscribed;
+    }
+
+    @Override
+    public int doWork() {
+        if (unsubscribed) {
+            throw new AgentTerminationException();
+        }
+        ringBuffer.consumerHeartbeatTime(SystemEpochClock.INSTANCE.time());
+
+        final long requestCount = requestCounter.get();
+        if (requestCount == 0) {
+            return 0;
+        }
+
+        deliveredCount = 0;
+        ringBuffer.controlledRead(handler, (int) Math.min(requestCount, MAX_READ_BATCH));
+        final int readCount = deliveredCount;
+        if (readCount != 0 && requestCounter.get() != Long.MAX_VALUE) {
+            requestCounter.addAndGet(-readCount);
+        }
+        return readCount;
+    }
+
+    @Override
+    public void onClose() {
+        ringBuffer.consumerHeartbeatTime(NO_CONSUMER);
+    }
+
+    @Override
+    public String roleName() {
+        return roleName;
+    }
+
+    private ControlledMessageHandler.Action onMessage(
+        final int msgTypeId,
+        final MutableDirectBuffer buffer,
+        final int index,
+        final int length
+    ) {
+        if (unsubscribed) {
+            return ControlledMessageHandler.Action.ABORT;
+        }
+
+        // A message that fails is still consumed, so that a poison message cannot wedge the ring buffer
+        deliveredCount++;
+        try {
+            subscriber.onNext(codec.decode(buffer, index, length));
+        } catch (final Throwable ex) {
+            onError(ex);
+        }
+        return ControlledMessageHandler.Action.CONTINUE;
+    }
+
+    private void onError(final Throwable ex) {
+        if (ex instanceof AgentTerminationException) {
+            return;     // normal exit after cancel()
+        }
+        unsubscribed = true;
+        subscriber.onError(ex);
+    }
+}
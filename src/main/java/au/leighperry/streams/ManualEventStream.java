@@ -3,17 +3,35 @@ package au.leighperry.streams;
 import akka.NotUsed;
 import akka.stream.javadsl.Source;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
 /**
  * Akka-stream that only emits events that are explicitly created via insert() method. Useful
  * for testing streams and other use cases such as trigger conditions.
+ * <p>
+ * insert() never blocks and buffers without limit. insertAsync() and insertBlocking() instead wait until the
+ * stream has demand for each event, or space in a buffer of {@code bufferSize} events, so that producers run
+ * at the pace of the stream.
  */
 public class ManualEventStream<T> {
+    private final int bufferSize;
     private StreamsBufferedSubscription<T> subscription;
 
+    public ManualEventStream() {
+        this(0);
+    }
+
+    /** @param bufferSize the number of events insertAsync() and insertBlocking() may queue beyond demand */
+    public ManualEventStream(final int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
     public Source<T, NotUsed> observe() {
         return Source.fromPublisher(
             subscriber -> {
-                subscription = new StreamsBufferedSubscription<>(subscriber);
+                subscription = new StreamsBufferedSubscription<>(subscriber, bufferSize);
                 subscriber.onSubscribe(subscription);
             }
         );
@@ -25,5 +43,67 @@ public class ManualEventStream<T> {
             subscription.offer(e);
         }
     }
-}
 
+    /** Complete the stream once already inserted events have been emitted */
+    public void complete() {
+        subscription.complete();
+    }
+
+    /** Fail the stream once already inserted events have been emitted */
+    public void fail(final Throwable ex) {
+        subscription.fail(ex);
+    }
+
+    /**
+     * Insert events as the stream has demand for them.
+     *
+     * @return a stage that completes when the last event has been accepted
+     */
+    @SafeVarargs
+    public final CompletionStage<Void> insertAsync(final T... event) {
+        CompletableFuture<Void> accepted = CompletableFuture.completedFuture(null);
+        for (final T e : event) {
+            // Accepted in order, so the last to be accepted implies all are
+            accepted = subscription.offerAsync(e);
+        }
+        return accepted;
+    }
+
+    /**
+     * Insert events, waiting until the stream has demand for them. Waiting parks the calling thread rather than
+     * holding a monitor, so is cheap on virtual threads.
+     * <p>
+     * If the thread is interrupted, the event being waited for is withdrawn and InterruptedException thrown, so
+     * the events before it are inserted exactly once and the rest not at all. An event accepted just as the
+     * interrupt arrives stays inserted, and the interrupt is reported before the next event instead.
+     *
+     * @throws java.util.concurrent.CancellationException if the stream is cancelled while waiting
+     * @throws IllegalStateException                      if the stream has been completed
+     */
+    @SafeVarargs
+    public final void insertBlocking(final T... event) throws InterruptedException {
+        for (final T e : event) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            final CompletableFuture<Void> accepted = subscription.offerAsync(e);
+            try {
+                accepted.get();
+            } catch (final InterruptedException ex) {
+                if (accepted.cancel(false)) {
+                    throw ex;
+                }
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException ex) {
+                final Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package au.leighperry.streams;
+
+import akka.stream.Attributes;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.UniformFanInShape;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.GraphStageWithMaterializedValue;
+import scala.Tuple2;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Merge that, when several inputs have an element waiting, emits from the highest priority input first. Inputs of
+ * equal priority take turns. To stop a flood of high priority elements starving the rest, an input that has been
+ * passed over {@code starvationLimit} times in a row is served next regardless of priority.
+ * <p>
+ * Priority only matters when downstream is slower than upstream: with no backlog, elements pass straight through.
+ * Materializes {@link Metrics} recording how long elements of each priority wait to be emitted. Completes when all
+ * inputs have completed.
+ *
+ * @param <T> the element type
+ */
+@SuppressWarnings( { "unchecked", "rawtypes" })
+public class PriorityMerge<T> extends GraphStageWithMaterializedValue<UniformFanInShape<T, T>, PriorityMerge.Metrics> {
+    public static final int DEFAULT_STARVATION_LIMIT = 8;
+
+    private final int[] priorities;
+    private final int starvationLimit;
+    private final Inlet<T>[] ins;
+    private final Outlet<T> out = Outlet.create("PriorityMerge.out");
+    private final UniformFanInShape<T, T> shape;
+
+    /**
+     * @param priorities      priority of each input, higher values served first
+     * @param starvationLimit times an input may be passed over while waiting before it is served
+     */
+    public PriorityMerge(final int[] priorities, final int starvationLimit) {
+        if (starvationLimit <= 0) {
+            throw new IllegalArgumentException("starvationLimit > 0 required");
+        }
+        this.priorities = priorities.clone();
+        this.starvationLimit = starvationLimit;
+        this.ins = new Inlet[priorities.length];
+        for (int i = 0; i < ins.length; i++) {
+            ins[i] = Inlet.create("PriorityMerge.in" + i);
+        }
+        this.shape = new UniformFanInShape<>(out, ins);
+    }
+
+    @Override
+    public UniformFanInShape<T, T> shape() {
+        return shape;
+    }
+
+    @Override
+    public Tuple2<GraphStageLogic, Metrics> createLogicAndMaterializedValue(final Attributes inheritedAttributes) {
+        final Metrics metrics = new Metrics(priorities);
+        final int size = ins.length;
+
+        final GraphStageLogic logic =
+            new GraphStageLogic(shape) {
+                private final long[] arrivalNanos = new long[size];
+                private final int[] passedOver = new int[size];
+                private int runningUpstreams = size;
+
+                {
+                    for (int i = 0; i < size; i++) {
+                        final int input = i;
+                        setHandler(
+                            ins[input],
+                            new AbstractInHandler() {
+                                @Override
+                                public void onPush() {
+                                    arrivalNanos[input] = System.nanoTime();
+                                    if (isAvailable(out)) {
+                                        dispatch();
+                                    }
+                                }
+
+                                @Override
+                                public void onUpstreamFinish() {
+                                    runningUpstreams--;
+                                    completeIfDone();
+                                }
+                            }
+                        );
+                    }
+
+                    setHandler(
+                        out,
+                        new AbstractOutHandler() {
+                            @Override
+                            public void onPull() {
+                                dispatch();
+                            }
+                        }
+                    );
+                }
+
+                @Override
+                public void preStart() {
+                    for (final Inlet<T> in : ins) {
+                        pull(in);
+                    }
+                }
+
+                private void dispatch() {
+                    final int chosen = choose();
+                    if (chosen < 0) {
+                        return;
+                    }
+
+                    final T e = grab(ins[chosen]);
+                    metrics.record(chosen, System.nanoTime() - arrivalNanos[chosen]);
+                    push(out, e);
+
+                    if (isClosed(ins[chosen])) {
+                        completeIfDone();
+                    } else {
+                        pull(ins[chosen]);
+                    }
+                }
+
+                /** @return the waiting input to serve next, or -1 if none waiting */
+                private int choose() {
+                    int best = -1;
+                    int starved = -1;
+                    for (int i = 0; i < size; i++) {
+                        if (!isAvailable(ins[i])) {
+                            continue;
+                        }
+                        if (best < 0
+                            || priorities[i] > priorities[best]
+                            || priorities[i] == priorities[best] && passedOver[i] > passedOver[best]) {
+                            best = i;
+                        }
+                        if (passedOver[i] >= starvationLimit && (starved < 0 || passedOver[i] > passedOver[starved])) {
+                            starved = i;
+                        }
+                    }
+
+                    final int chosen = starved >= 0 ? starved : best;
+                    for (int i = 0; i < size; i++) {
+                        if (i != chosen && isAvailable(ins[i])) {
+                            passedOver[i]++;
+                        }
+                    }
+                    if (chosen >= 0) {
+                        passedOver[chosen] = 0;
+                    }
+                    return chosen;
+                }
+
+                private void completeIfDone() {
+                    if (runningUpstreams == 0 && !anyAvailable()) {
+                        completeStage();
+                    }
+                }
+
+                private boolean anyAvailable() {
+                    for (final Inlet<T> in : ins) {
+                        if (isAvailable(in)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            };
+
+        return new Tuple2<>(logic, metrics);
+    }
+
+    /**
+     * Per-priority counts and wait times, measured from an element arriving at the merge to it being emitted.
+     * Written by the stage, readable from any thread.
+     */
+    public static class Metrics {
+        private final int[] priorities;
+        private final AtomicLongArray emittedCounts;
+        private final AtomicLongArray totalWaitNanos;
+        private final AtomicLongArray maxWaitNanos;
+
+        Metrics(final int[] priorities) {
+            this.priorities = priorities;
+            this.emittedCounts = new AtomicLongArray(priorities.length);
+            this.totalWaitNanos = new AtomicLongArray(priorities.length);
+            this.maxWaitNanos = new AtomicLongArray(priorities.length);
+        }
+
+        // Single writer, so ordered puts suffice
+        void record(final int input, final long waitNanos) {
+            emittedCounts.lazySet(input, emittedCounts.get(input) + 1);
+            totalWaitNanos.lazySet(input, totalWaitNanos.get(input) + waitNanos);
+            if (waitNanos > maxWaitNanos.get(input)) {
+                maxWaitNanos.lazySet(input, waitNanos);
+            }
+        }
+
+        /** @return the distinct priorities, ascending */
+        public int[] getPriorities() {
+            return Arrays.stream(priorities).distinct().sorted().toArray();
+        }
+
+        public long getEmittedCount(final int priority) {
+            long total = 0;
+            for (int i = 0; i < priorities.length; i++) {
+                if (priorities[i] == priority) {
+                    total += emittedCounts.get(i);
+                }
+            }
+            return total;
+        }
+
+        public long getTotalWaitNanos(final int priority) {
+            long total = 0;
+            for (int i = 0; i < priorities.length; i++) {
+                if (priorities[i] == priority) {
+                    total += totalWaitNanos.get(i);
+                }
+            }
+            return total;
+        }
+
+        public long getMaxWaitNanos(final int priority) {
+            long max = 0;
+            for (int i = 0; i < priorities.length; i++) {
+                if (priorities[i] == priority) {
+                    max = Math.max(max, maxWaitNanos.get(i));
+                }
+            }
+            return max;
+        }
+
+        /** @return NaN if nothing emitted at this priority */
+        public double getMeanWaitNanos(final int priority) {
+            final long count = getEmittedCount(priority);
+            return count == 0 ? Double.NaN : (double) getTotalWaitNanos(priority) / count;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package au.leighperry.streams;
+
+import akka.NotUsed;
+import akka.stream.KillSwitches;
+import akka.stream.Materializer;
+import akka.stream.UniqueKillSwitch;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Materializes an upstream source once and shares it among any number of subscribers. The latest upstream value
+ * is cached and replayed immediately to each subscriber as it attaches, then live updates follow.
+ * <p>
+ * Intended for "current value" streams such as the output of {@link AkkaStreams#combineLatest}, where a late
+ * subscriber would otherwise wait for every input to produce again. Subscribers are conflated: a slow subscriber
+ * skips intermediate values and sees only the latest, and never backpressures the shared upstream.
+ * <p>
+ * The shared upstream runs until it terminates or the hub is closed.
+ *
+ * @param <T> the value type
+ */
+public class ReplayLatestHub<T> implements AutoCloseable {
+    private final UniqueKillSwitch killSwitch;
+    private final List<ConflatingSubscription<T>> subscriptions = new CopyOnWriteArrayList<>();
+    private final Object lock = new Object();
+    private T latest;
+    private boolean completed;
+    private Throwable error;
+
+    public ReplayLatestHub(final Source<T, NotUsed> upstream, final Materializer materializer) {
+        killSwitch =
+            upstream
+                .viaMat(KillSwitches.single(), Keep.right())
+                .toMat(
+                    Sink.foreach(this::publish),
+                    (ks, done) -> {
+                        done.whenComplete((d, ex) -> terminate(ex));
+                        return ks;
+                    }
+                )
+                .run(materializer);
+    }
+
+    public Source<T, NotUsed> observe() {
+        return Source.fromPublisher(
+            subscriber -> {
+                final ConflatingSubscription<T> subscription = new ConflatingSubscription<>(subscriber);
+                subscriber.onSubscribe(subscription);
+
+                // Attach under the lock so that the replayed value cannot overtake a concurrent update
+                synchronized (lock) {
+                    // Cancelled subscriptions are otherwise only pruned on publish, which may be a long time coming
+                    subscriptions.removeIf(s -> !s.isSubscribed());
+                    if (latest != null) {
+                        subscription.offer(latest);
+                    }
+                    if (!completed) {
+                        subscriptions.add(subscription);
+                    } else if (error == null) {
+                        subscription.complete();
+                    } else {
+                        subscription.fail(error);
+                    }
+                }
+            }
+        );
+    }
+
+    /** Cancels the shared upstream and completes every subscriber */
+    @Override
+    public void close() {
+        killSwitch.shutdown();
+    }
+
+    /** @return the number of attached subscribers, counting any cancelled since the last attach or publish */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /** @return the latest upstream value, or null if upstream has not produced yet */
+    public T getLatest() {
+        synchronized (lock) {
+            return latest;
+        }
+    }
+
+    private void publish(final T value) {
+        synchronized (lock) {
+            latest = value;
+            for (final ConflatingSubscription<T> subscription : subscriptions) {
+                if (subscription.isSubscribed()) {
+                    subscription.offer(value);
+                } else {
+                    subscriptions.remove(subscription);
+                }
+            }
+        }
+    }
+
+    private void terminate(final Throwable ex) {
+        synchronized (lock) {
+            completed = true;
+            error = ex;
+            for (final ConflatingSubscription<T> subscription : subscriptions) {
+                if (ex == null) {
+                    subscription.complete();
+                } else {
+                    subscription.fail(ex);
+                }
+            }
+            subscriptions.clear();
+        }
+    }
+}
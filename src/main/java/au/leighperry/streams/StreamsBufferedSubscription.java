@@ -5,6 +5,9 @@ import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
 import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -12,6 +15,14 @@ import java.util.concurrent.atomic.AtomicLong;
  * Producer that holds an unbounded queue to enqueue values and relays them
  * to a subscriber subscriber on request.
  * <p>
+ * Values passed to {@link #offerAsync} are instead held back until the subscriber has demand for them, or until
+ * there is space in a buffer of {@code bufferSize} values beyond that demand, letting producers match the
+ * subscriber's pace. Cancelling the future returned by {@link #offerAsync} withdraws the value if it has not yet
+ * been accepted.
+ * <p>
+ * Cancelling releases everything queued and rejects further offers, so a cancelled stream holds no memory.
+ * {@link #complete} and {@link #fail} publish what is already queued as demand allows, then terminate the subscriber.
+ * <p>
  * Implementation extended from rxjava's internal QueuedValueProducer class
  *
  * @param <T> the value type
@@ -19,13 +30,33 @@ import java.util.concurrent.atomic.AtomicLong;
 public class StreamsBufferedSubscription<T> implements Subscription {
     final Subscriber<? super T> subscriber;
     final Queue<T> queue = new ManyToOneConcurrentLinkedQueue<>();
+    final Queue<PendingOffer> pendingOffers = new ManyToOneConcurrentLinkedQueue<>();
+    final int bufferSize;
 
     final AtomicLong requestCounter = new AtomicLong();
+    final AtomicLong queuedCounter = new AtomicLong();
+    final AtomicLong releasedCounter = new AtomicLong();
     final AtomicInteger publishInProgressCount = new AtomicInteger();
+    final AtomicInteger offersInFlight = new AtomicInteger();
     private volatile boolean unsubscribed;
+    private volatile boolean completing;
+    private volatile boolean completed;
+    private volatile Throwable failure;
 
     public StreamsBufferedSubscription(final Subscriber<? super T> subscriber) {
+        this(subscriber, 0);
+    }
+
+    /**
+     * @param subscriber the subscriber to relay values to
+     * @param bufferSize the number of values accepted by {@link #offerAsync} beyond outstanding demand
+     */
+    public StreamsBufferedSubscription(final Subscriber<? super T> subscriber, final int bufferSize) {
+        if (bufferSize < 0) {
+            throw new IllegalArgumentException("bufferSize >= 0 required");
+        }
         this.subscriber = subscriber;
+        this.bufferSize = bufferSize;
     }
 
     @Override
@@ -42,26 +73,78 @@ public class StreamsBufferedSubscription<T> implements Subscription {
     @Override
     public void cancel() {
         unsubscribed = true;
+        publishFromQueue();     // releases the queue and any producers waiting in offerAsync()
+    }
+
+    /** Signals onComplete once all values offered so far have been published. Further offers are rejected. */
+    public void complete() {
+        completing = true;
+        publishFromQueue();
+    }
+
+    /** Signals onError once all values offered so far have been published. Further offers are rejected. */
+    public void fail(final Throwable ex) {
+        failure = ex;
+        completing = true;
+        publishFromQueue();
     }
 
     public long getRequestCount() {
         return requestCounter.get();
     }
 
+    /** @return the number of values queued and not yet published */
+    public long getQueuedCount() {
+        return queuedCounter.get();
+    }
+
+    /** @return the number of values discarded unpublished, including rejected waiting offers, after cancellation */
+    public long getReleasedCount() {
+        return releasedCounter.get();
+    }
+
     /**
      * Offers a value to this producer and tries to emit any queued values
      * if the subscriber requests allow it.
      *
      * @param value the value to enqueue and attempt to publish
-     * @return true if the queue accepted the offer, false otherwise
+     * @return true if the value will be published unless the subscriber cancels first, false if it was rejected
+     * eg after cancellation or completion
      */
     public boolean offer(final T value) {
-        if (!queue.offer(value)) {
-            return false;
+        // Counted in flight so that completion waits for a value that passed the completing check to be queued
+        offersInFlight.incrementAndGet();
+        final boolean accepted = !unsubscribed && !completing && queue.offer(value);
+        if (accepted) {
+            queuedCounter.incrementAndGet();
         }
+        offersInFlight.decrementAndGet();
 
         publishFromQueue();
-        return true;
+        return accepted;
+    }
+
+    /**
+     * Offers a value to this producer once the subscriber has demand for it or there is space in the buffer.
+     * Values offered this way are accepted in the order offered.
+     *
+     * @param value the value to enqueue and attempt to publish
+     * @return a future that completes when the value has been accepted, or completes exceptionally with
+     * {@link CancellationException} if the subscription is cancelled first, or {@link IllegalStateException} if
+     * already completed. Cancelling it withdraws the value, unless it has already been accepted.
+     */
+    public CompletableFuture<Void> offerAsync(final T value) {
+        // Checked first, since a completed stream is also unsubscribed
+        if (completing || unsubscribed) {
+            final CompletableFuture<Void> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(rejection(completing));
+            return rejected;
+        }
+
+        final PendingOffer accepted = new PendingOffer(value);
+        pendingOffers.offer(accepted);
+        publishFromQueue();
+        return accepted;
     }
 
     private void publishFromQueue() {
@@ -70,40 +153,114 @@ public class StreamsBufferedSubscription<T> implements Subscription {
             final Subscriber<? super T> c = subscriber;
             final Queue<T> q = queue;
             do {
+                // Detection mechanism for concurrent publishFromQueue attempt during this loop, ie offer() called
+                publishInProgressCount.lazySet(1);
+
+                // Keep draining after cancellation, so that values racing with cancel() are released too
                 if (unsubscribed) {
-                    return;
+                    releaseQueued();
+                    continue;
                 }
 
-                // Detection mechanism for concurrent publishFromQueue attempt during this loop, ie offer() called
-                publishInProgressCount.lazySet(1);
+                long requestCount = requestCounter.get();
+                acceptPendingOffers(requestCount);
 
                 // Publish until request count exhausted or queue is empty
-                long requestCount = requestCounter.get();
                 long publishedCount = 0;
                 T v;
                 while (requestCount != 0 && (v = q.poll()) != null) {
                     try {
                         c.onNext(v);
                     } catch (final Throwable ex) {
+                        unsubscribed = true;
                         subscriber.onError(ex);
-                        return;
-                    }
-
-                    if (unsubscribed) {
-                        return;
                     }
 
                     requestCount--;
                     publishedCount++;
+
+                    if (unsubscribed) {
+                        break;
+                    }
                 }
 
+                if (publishedCount != 0) {
+                    queuedCounter.addAndGet(-publishedCount);
+                }
                 if (publishedCount != 0 && requestCounter.get() != Long.MAX_VALUE) {
                     requestCounter.addAndGet(-publishedCount);
                 }
+
+                if (unsubscribed) {
+                    releaseQueued();
+                } else if (completing && offersInFlight.get() == 0 && q.isEmpty() && pendingOffers.isEmpty()) {
+                    completed = true;
+                    unsubscribed = true;
+                    final Throwable ex = failure;
+                    if (ex == null) {
+                        c.onComplete();
+                    } else {
+                        c.onError(ex);
+                    }
+                }
             } while (publishInProgressCount.decrementAndGet() != 0);
         }
     }
 
+    /**
+     * Moves pending offers into the queue while they can be published immediately or fit in the buffer. Withdrawn
+     * offers are dropped as they reach the head, so that they do not hold up completion.
+     */
+    private void acceptPendingOffers(final long requestCount) {
+        final long limit = addCap(requestCount, bufferSize);
+        PendingOffer p;
+        while ((p = pendingOffers.peek()) != null) {
+            if (!p.isClaimed() && queuedCounter.get() >= limit) {
+                break;
+            }
+            pendingOffers.poll();
+            if (p.claim()) {
+                queue.offer(p.value);
+                queuedCounter.incrementAndGet();
+                p.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Discards queued values and rejects waiting offers, counting what was released. Offers that raced with
+     * completion are rejected as completed rather than released.
+     */
+    private void releaseQueued() {
+        long releasedCount = 0;
+        while (queue.poll() != null) {
+            releasedCount++;
+        }
+        if (releasedCount != 0) {
+            queuedCounter.addAndGet(-releasedCount);
+        }
+
+        PendingOffer p;
+        while ((p = pendingOffers.poll()) != null) {
+            if (p.claim()) {
+                if (!completed) {
+                    releasedCount++;
+                }
+                p.completeExceptionally(rejection(completed));
+            }
+        }
+
+        if (releasedCount != 0) {
+            releasedCounter.addAndGet(releasedCount);
+        }
+    }
+
+    private static RuntimeException rejection(final boolean completed) {
+        return completed
+            ? new IllegalStateException("Stream completed")
+            : new CancellationException("Subscription cancelled");
+    }
+
     public boolean isSubscribed() {
         return !unsubscribed;
     }
@@ -142,5 +299,32 @@ public class StreamsBufferedSubscription<T> implements Subscription {
         }
         return u;
     }
-}
 
+    /** A value waiting in offerAsync(), claimed exactly once by either acceptance, release or withdrawal */
+    private final class PendingOffer extends CompletableFuture<Void> {
+        final T value;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        PendingOffer(final T value) {
+            this.value = value;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        boolean isClaimed() {
+            return claimed.get();
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            if (!claim()) {
+                return false;
+            }
+            super.cancel(mayInterruptIfRunning);
+            publishFromQueue();     // lets a completing stream finish without waiting for this offer
+            return true;
+        }
+    }
+}
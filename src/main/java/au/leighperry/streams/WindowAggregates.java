@@ -0,0 +1,223 @@
+package au.leighperry.streams;
+
+import akka.NotUsed;
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.javadsl.Flow;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Sliding and tumbling window aggregates (count, sum, mean, weighted mean, min, max) over numeric streams. Windows are
+ * held in a preallocated {@link DoubleWindow}, so values are never boxed or collected; the only allocation is the
+ * {@link WindowStats} emitted per window.
+ * <p>
+ * Sliding windows emit on every element once the window is established; tumbling windows emit as each window closes,
+ * including a final partial window on completion. Time-based windows use event time, which must be non-decreasing,
+ * and hold at most {@code capacity} elements per window, failing the stream beyond that.
+ * <p>
+ * Weighted variants support eg VWAP, by weighting price by volume.
+ */
+public class WindowAggregates {
+    private static final ToDoubleFunction<Object> UNWEIGHTED = e -> 1.0;
+
+    /** Aggregates over the last {@code size} elements, emitted for each element once {@code size} have arrived */
+    public static <T> Flow<T, WindowStats, NotUsed> slidingCount(final int size, final ToDoubleFunction<? super T> value) {
+        return slidingCount(size, value, UNWEIGHTED);
+    }
+
+    public static <T> Flow<T, WindowStats, NotUsed> slidingCount(
+        final int size,
+        final ToDoubleFunction<? super T> value,
+        final ToDoubleFunction<? super T> weight
+    ) {
+        return Flow.fromGraph(new WindowStage<>(true, size, 0, size, null, value, weight));
+    }
+
+    /** Aggregates over consecutive, non-overlapping groups of {@code size} elements */
+    public static <T> Flow<T, WindowStats, NotUsed> tumblingCount(final int size, final ToDoubleFunction<? super T> value) {
+        return tumblingCount(size, value, UNWEIGHTED);
+    }
+
+    public static <T> Flow<T, WindowStats, NotUsed> tumblingCount(
+        final int size,
+        final ToDoubleFunction<? super T> value,
+        final ToDoubleFunction<? super T> weight
+    ) {
+        return Flow.fromGraph(new WindowStage<>(false, size, 0, size, null, value, weight));
+    }
+
+    /** Aggregates over elements within {@code duration} of each element ie timestamps in (t - duration, t] */
+    public static <T> Flow<T, WindowStats, NotUsed> slidingTime(
+        final long duration,
+        final int capacity,
+        final AkkaStreams.TimestampExtractor<? super T> timestamp,
+        final ToDoubleFunction<? super T> value
+    ) {
+        return slidingTime(duration, capacity, timestamp, value, UNWEIGHTED);
+    }
+
+    public static <T> Flow<T, WindowStats, NotUsed> slidingTime(
+        final long duration,
+        final int capacity,
+        final AkkaStreams.TimestampExtractor<? super T> timestamp,
+        final ToDoubleFunction<? super T> value,
+        final ToDoubleFunction<? super T> weight
+    ) {
+        return Flow.fromGraph(new WindowStage<>(true, 0, duration, capacity, timestamp, value, weight));
+    }
+
+    /** Aggregates over aligned, non-overlapping time buckets [k * duration, (k + 1) * duration) */
+    public static <T> Flow<T, WindowStats, NotUsed> tumblingTime(
+        final long duration,
+        final int capacity,
+        final AkkaStreams.TimestampExtractor<? super T> timestamp,
+        final ToDoubleFunction<? super T> value
+    ) {
+        return tumblingTime(duration, capacity, timestamp, value, UNWEIGHTED);
+    }
+
+    public static <T> Flow<T, WindowStats, NotUsed> tumblingTime(
+        final long duration,
+        final int capacity,
+        final AkkaStreams.TimestampExtractor<? super T> timestamp,
+        final ToDoubleFunction<? super T> value,
+        final ToDoubleFunction<? super T> weight
+    ) {
+        return Flow.fromGraph(new WindowStage<>(false, 0, duration, capacity, timestamp, value, weight));
+    }
+
+    /** Count-based when {@code timestamp} is null, otherwise time-based */
+    private static class WindowStage<T> extends GraphStage<FlowShape<T, WindowStats>> {
+        private final Inlet<T> in = Inlet.create("WindowAggregates.in");
+        private final Outlet<WindowStats> out = Outlet.create("WindowAggregates.out");
+        private final FlowShape<T, WindowStats> shape = FlowShape.of(in, out);
+
+        private final boolean sliding;
+        private final int size;
+        private final long duration;
+        private final int capacity;
+        private final AkkaStreams.TimestampExtractor<? super T> timestamp;
+        private final ToDoubleFunction<? super T> value;
+        private final ToDoubleFunction<? super T> weight;
+
+        WindowStage(
+            final boolean sliding,
+            final int size,
+            final long duration,
+            final int capacity,
+            final AkkaStreams.TimestampExtractor<? super T> timestamp,
+            final ToDoubleFunction<? super T> value,
+            final ToDoubleFunction<? super T> weight
+        ) {
+            if (timestamp == null ? size <= 0 : duration <= 0) {
+                throw new IllegalArgumentException("window size and duration must be > 0");
+            }
+            this.sliding = sliding;
+            this.size = size;
+            this.duration = duration;
+            this.capacity = capacity;
+            this.timestamp = timestamp;
+            this.value = value;
+            this.weight = weight;
+        }
+
+        @Override
+        public FlowShape<T, WindowStats> shape() {
+            return shape;
+        }
+
+        @Override
+        public GraphStageLogic createLogic(final Attributes inheritedAttributes) {
+            return new GraphStageLogic(shape) {
+                private final DoubleWindow window = new DoubleWindow(capacity);
+                private long index;
+                private long bucket = Long.MIN_VALUE;
+
+                {
+                    setHandler(
+                        in,
+                        new AbstractInHandler() {
+                            @Override
+                            public void onPush() {
+                                final WindowStats stats = onElement(grab(in));
+                                if (stats == null) {
+                                    pull(in);
+                                } else {
+                                    push(out, stats);
+                                }
+                            }
+
+                            @Override
+                            public void onUpstreamFinish() {
+                                if (!sliding && !window.isEmpty()) {
+                                    emit(out, window.stats());
+                                }
+                                completeStage();
+                            }
+                        }
+                    );
+
+                    setHandler(
+                        out,
+                        new AbstractOutHandler() {
+                            @Override
+                            public void onPull() {
+                                pull(in);
+                            }
+                        }
+                    );
+                }
+
+                /** @return the stats to emit, or null if no window closed */
+                private WindowStats onElement(final T e) {
+                    final long ts = timestamp == null ? index++ : timestamp.timestampOf(e);
+                    final double v = value.applyAsDouble(e);
+                    final double w = weight.applyAsDouble(e);
+
+                    if (timestamp == null) {
+                        if (sliding) {
+                            if (window.size() == size) {
+                                window.evictOldest();
+                            }
+                            window.add(ts, v, w);
+                            return window.size() == size ? window.stats() : null;
+                        }
+
+                        window.add(ts, v, w);
+                        if (window.size() < size) {
+                            return null;
+                        }
+                        final WindowStats stats = window.stats();
+                        window.clear();
+                        return stats;
+                    }
+
+                    if (sliding) {
+                        window.evictBefore(ts - duration + 1);
+                        window.add(ts, v, w);
+                        return window.stats();
+                    }
+
+                    final long b = Math.floorDiv(ts, duration);
+                    WindowStats stats = null;
+                    if (b != bucket) {
+                        if (!window.isEmpty()) {
+                            stats = window.stats();
+                            window.clear();
+                        }
+                        bucket = b;
+                    }
+                    window.add(ts, v, w);
+                    return stats;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package au.leighperry.streams;
+
+/**
+ * Aggregates of one window of a numeric stream, as emitted by {@link WindowAggregates}. For count-based windows the
+ * timestamps are element indices.
+ */
+public class WindowStats {
+    private final int count;
+    private final double sum;
+    private final double mean;
+    private final double weightedMean;
+    private final double min;
+    private final double max;
+    private final long startTimestamp;
+    private final long endTimestamp;
+
+    public WindowStats(
+        final int count,
+        final double sum,
+        final double mean,
+        final double weightedMean,
+        final double min,
+        final double max,
+        final long startTimestamp,
+        final long endTimestamp
+    ) {
+        this.count = count;
+        this.sum = sum;
+        this.mean = mean;
+        this.weightedMean = weightedMean;
+        this.min = min;
+        this.max = max;
+        this.startTimestamp = startTimestamp;
+        this.endTimestamp = endTimestamp;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getWeightedMean() {
+        return weightedMean;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /** @return timestamp of the oldest element in the window */
+    public long getStartTimestamp() {
+        return startTimestamp;
+    }
+
+    /** @return timestamp of the newest element in the window */
+    public long getEndTimestamp() {
+        return endTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "WindowStats[count=%d, sum=%s, mean=%s, weightedMean=%s, min=%s, max=%s, start=%d, end=%d]",
+            count, sum, mean, weightedMean, min, max, startTimestamp, endTimestamp
+        );
+    }
+}
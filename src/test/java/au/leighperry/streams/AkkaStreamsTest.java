@@ -2,17 +2,31 @@ package au.leighperry.streams;
 
 import akka.NotUsed;
 import akka.actor.ActorSystem;
+import akka.japi.Pair;
 import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Keep;
 import akka.stream.javadsl.Source;
+import akka.stream.testkit.TestPublisher;
 import akka.stream.testkit.TestSubscriber;
 import akka.stream.testkit.javadsl.TestSink;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import scala.concurrent.duration.FiniteDuration;
 
+import java.io.File;
+import java.io.RandomAccessFile;
 import java.sql.Time;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class AkkaStreamsTest {
     private static ActorSystem actorSystem;
@@ -408,4 +422,487 @@ public class AkkaStreamsTest {
         s8.insert(12, 13);
         probe.request(2).expectNext("10:2:11:4:5:6:7:8:12", "10:2:11:4:5:6:7:8:13");
     }
+
+    @Test
+    public void testReplayLatest() throws Exception {
+        final ManualEventStream<Integer> s0 = new ManualEventStream<>();
+        final ManualEventStream<Integer> s1 = new ManualEventStream<>();
+
+        final ReplayLatestHub<String> hub =
+            AkkaStreams.replayLatest(
+                AkkaStreams.combineLatest(
+                    s0.observe(),
+                    s1.observe(),
+                    (e0, e1) -> String.format("%s:%s", e0, e1)
+                ),
+                materializer
+            );
+
+        final TestSubscriber.Probe<String> early =
+            hub.observe().runWith(TestSink.probe(actorSystem), materializer);
+
+        s0.insert(1);
+        s1.insert(2);
+        early.request(1).expectNext("1:2");
+
+        // Late subscriber gets the current combined value without waiting for the inputs
+        final TestSubscriber.Probe<String> late =
+            hub.observe().runWith(TestSink.probe(actorSystem), materializer);
+        late.request(1).expectNext("1:2");
+
+        s0.insert(3);
+        early.request(1).expectNext("3:2");
+        late.request(1).expectNext("3:2");
+
+        // Cancelled subscribers are pruned on attach, without waiting for upstream to publish
+        early.cancel();
+        final TestSubscriber.Probe<String> another =
+            hub.observe().runWith(TestSink.probe(actorSystem), materializer);
+        assertEquals(2, hub.getSubscriberCount());
+
+        // Closing stops the shared upstream and completes the subscribers
+        hub.close();
+        late.expectComplete();
+        another.request(1).expectNext("3:2");
+        another.expectComplete();
+        s0.insert(4);
+        assertEquals("3:2", hub.getLatest());
+    }
+
+    @Test
+    public void testInsertBlocking() throws Exception {
+        final int bufferSize = 2;
+        final ManualEventStream<Integer> s0 = new ManualEventStream<>(bufferSize);
+
+        final TestSubscriber.Probe<Integer> probe =
+            s0.observe().runWith(TestSink.probe(actorSystem), materializer);
+
+        // Producer is paced by downstream demand rather than queueing everything up front
+        final AtomicInteger inserted = new AtomicInteger();
+        final Thread producer =
+            new Thread(
+                () -> {
+                    try {
+                        for (int i = 0; i < 100; i++) {
+                            s0.insertBlocking(i);
+                            inserted.incrementAndGet();
+                        }
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            );
+        producer.start();
+
+        // With no demand, only the buffer fills and the producer parks
+        awaitParked(producer, inserted, bufferSize);
+
+        int requested = 0;
+        for (final int n : new int[]{1, 5, 10}) {
+            probe.request(n);
+            for (int i = requested; i < requested + n; i++) {
+                probe.expectNext(i);
+            }
+            requested += n;
+            awaitParked(producer, inserted, requested + bufferSize);
+        }
+
+        probe.request(100 - requested);
+        for (int i = requested; i < 100; i++) {
+            probe.expectNext(i);
+        }
+        producer.join();
+        assertEquals(100, inserted.get());
+    }
+
+    @Test
+    public void testInsertBlockingInterruptWithdrawsEvent() throws Exception {
+        final ManualEventStream<Integer> s0 = new ManualEventStream<>();
+
+        final TestSubscriber.Probe<Integer> probe =
+            s0.observe().runWith(TestSink.probe(actorSystem), materializer);
+
+        final AtomicInteger inserted = new AtomicInteger();
+        final Thread producer =
+            new Thread(
+                () -> {
+                    try {
+                        s0.insertBlocking(1);
+                        inserted.incrementAndGet();
+                    } catch (final InterruptedException e) {
+                        // expected, the event is not inserted
+                    }
+                }
+            );
+        producer.start();
+        awaitParked(producer, inserted, 0);
+        producer.interrupt();
+        producer.join();
+
+        // The retried event is emitted once only
+        s0.insert(1);
+        s0.complete();
+        probe.request(2).expectNext(1);
+        probe.expectComplete();
+        assertEquals(0, inserted.get());
+    }
+
+    @Test
+    public void testInsertBlockingAfterComplete() throws Exception {
+        final ManualEventStream<Integer> s0 = new ManualEventStream<>();
+        final TestSubscriber.Probe<Integer> probe =
+            s0.observe().runWith(TestSink.probe(actorSystem), materializer);
+
+        s0.complete();
+        probe.expectSubscriptionAndComplete();
+        try {
+            s0.insertBlocking(1);
+            fail("Expected insert into a completed stream to be rejected");
+        } catch (final IllegalStateException e) {
+            // CancellationException is also an IllegalStateException, so check the exact type
+            assertSame(IllegalStateException.class, e.getClass());
+            assertEquals("Stream completed", e.getMessage());
+        }
+    }
+
+    /** Waits for the producer to block having inserted exactly {@code expected} events */
+    private static void awaitParked(final Thread producer, final AtomicInteger inserted, final int expected)
+        throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        int count;
+        while ((count = inserted.get()) != expected || producer.getState() != Thread.State.WAITING) {
+            assertTrue("Producer ran ahead of demand: " + count, count <= expected);
+            assertTrue("Producer not parked at " + expected, System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+        Thread.sleep(50);
+        assertEquals(expected, inserted.get());
+    }
+
+    @Test
+    public void testAsOfJoin() throws Exception {
+        final ManualEventStream<Pair<Long, String>> s0 = new ManualEventStream<>();
+        final ManualEventStream<Pair<Long, String>> s1 = new ManualEventStream<>();
+
+        final AkkaStreams.TimestampExtractor<Pair<Long, String>> timestamp = Pair::first;
+        final Source<String, NotUsed> joined =
+            AkkaStreams.asOfJoin(
+                Arrays.asList(s0.observe(), s1.observe()),
+                Arrays.asList(timestamp, timestamp),
+                5,
+                AsOfJoin.LatePolicy.DROP,
+                array -> String.format("%s:%s", ((Pair<?, ?>) array[0]).second(), ((Pair<?, ?>) array[1]).second())
+            );
+
+        final TestSubscriber.Probe<String> probe =
+            joined.runWith(TestSink.probe(actorSystem), materializer);
+
+        s0.insert(Pair.create(10L, "a"), Pair.create(11L, "b"));
+        s1.insert(Pair.create(12L, "x"));
+        FiniteDuration waitTime = FiniteDuration.create(250, TimeUnit.MILLISECONDS);
+        probe.request(1).expectNoMsg(waitTime);
+
+        // Watermark 15: timestamps 10 and 11 have no value from s1 yet, 12 combines as-of values
+        s1.insert(Pair.create(20L, "y"));
+        probe.expectNext("b:x");
+
+        // 14 is behind the watermark so dropped; 18 and 20 are emitted once the watermark passes them
+        s0.insert(Pair.create(14L, "c"), Pair.create(18L, "d"), Pair.create(26L, "e"));
+        probe.request(2).expectNext("d:x", "d:y");
+    }
+
+    @Test
+    public void testCombineLatestFused() throws Exception {
+        final FusedManualEventStream<Integer> s0 = new FusedManualEventStream<>();
+        final FusedManualEventStream<Integer> s1 = new FusedManualEventStream<>();
+
+        final Source<String, NotUsed> combined =
+            AkkaStreams.combineLatest(
+                s0.observe(),
+                s1.observe(),
+                (e0, e1) -> String.format("%s:%s", e0, e1)
+            );
+
+        final TestSubscriber.Probe<String> probe =
+            combined.runWith(TestSink.probe(actorSystem), materializer);
+
+        s0.insert(1);
+        s1.insert(2);
+        probe.request(1).expectNext("1:2");
+
+        // Demand outstanding before the insert, so the source is woken by the insert
+        probe.request(1);
+        s0.insert(3);
+        probe.expectNext("3:2");
+
+        s1.insert(4, 5);
+        probe.request(2).expectNext("3:4", "3:5");
+    }
+
+    @Test
+    public void testFusedManualEventStreamSingleMaterialization() throws Exception {
+        final FusedManualEventStream<Integer> s0 = new FusedManualEventStream<>();
+        final Source<Integer, NotUsed> source = s0.observe();
+
+        final TestSubscriber.Probe<Integer> probe = source.runWith(TestSink.probe(actorSystem), materializer);
+        final TestSubscriber.Probe<Integer> rejected = source.runWith(TestSink.probe(actorSystem), materializer);
+        final Throwable error = rejected.expectSubscriptionAndError();
+        assertSame(IllegalStateException.class, error.getClass());
+
+        s0.insert(1, 2, 3, 4);
+        probe.request(4).expectNext(1, 2, 3, 4);
+
+        // Once stopped, queued and later events are released rather than accumulating
+        s0.insert(5, 6);
+        probe.cancel();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        while (s0.getQueuedCount() != 0) {
+            assertTrue("Queue not released after cancel", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+        s0.insert(7, 8);
+        assertEquals(0, s0.getQueuedCount());
+    }
+
+    @Test
+    public void testCombineLatestPrioritized() throws Exception {
+        final TestPublisher.Probe<Integer> low = TestPublisher.probe(0, actorSystem);
+        final TestPublisher.Probe<Integer> high = TestPublisher.probe(0, actorSystem);
+
+        final Source<String, PriorityMerge.Metrics> combined =
+            AkkaStreams.combineLatestPrioritized(
+                Arrays.asList(Source.fromPublisher(low), Source.fromPublisher(high)),
+                new int[] { 0, 1 },
+                2,
+                array -> String.format("%s:%s", array[0], array[1])
+            );
+
+        final Pair<PriorityMerge.Metrics, TestSubscriber.Probe<String>> materialized =
+            combined.toMat(TestSink.probe(actorSystem), Keep.both()).run(materializer);
+        final PriorityMerge.Metrics metrics = materialized.first();
+        final TestSubscriber.Probe<String> probe = materialized.second();
+
+        // Both sources have a backlog: high priority is served first until low priority has waited twice
+        low.sendNext(1);
+        high.sendNext(10).sendNext(11).sendNext(12);
+        probe.request(1).expectNext("1:11");
+        probe.request(1).expectNext("1:12");
+
+        assertEquals(1, metrics.getEmittedCount(0));
+        assertEquals(3, metrics.getEmittedCount(1));
+    }
+
+    @Test
+    public void testCombineLatestInstrumented() throws Exception {
+        final ManualEventStream<Integer> s0 = new ManualEventStream<>();
+        final ManualEventStream<Integer> s1 = new ManualEventStream<>();
+
+        final Pair<CombineLatestMetrics, TestSubscriber.Probe<String>> materialized =
+            AkkaStreams.combineLatestInstrumented(
+                Arrays.asList(s0.observe(), s1.observe()),
+                array -> String.format("%s:%s", array[0], array[1])
+            )
+                .toMat(TestSink.probe(actorSystem), Keep.both())
+                .run(materializer);
+        final CombineLatestMetrics metrics = materialized.first();
+        final TestSubscriber.Probe<String> probe = materialized.second();
+
+        s0.insert(1);
+        probe.request(1).expectNoMsg(FiniteDuration.create(100, TimeUnit.MILLISECONDS));
+        assertEquals(-1, metrics.getTimeToFirstEmissionNanos());
+        assertEquals(-1, metrics.getNanosSinceLastUpdate(1));
+
+        s1.insert(2);
+        probe.expectNext("1:2");
+        assertTrue(metrics.getTimeToFirstEmissionNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+
+        s0.insert(3);
+        probe.request(1).expectNext("3:2");
+        assertEquals(2, metrics.getUpdateCount(0));
+        assertEquals(1, metrics.getUpdateCount(1));
+        assertTrue(metrics.getUpdatesPerSecond(0) > 0);
+        assertTrue(Double.isNaN(metrics.getUpdatesPerSecond(1)));
+        assertTrue(metrics.getNanosSinceLastUpdate(1) >= metrics.getNanosSinceLastUpdate(0));
+    }
+
+    @Test
+    public void testCombineLatestCheckpointed() throws Exception {
+        final File file = File.createTempFile("combine-latest", ".snapshot");
+        file.deleteOnExit();
+
+        final EventCodec<Integer> codec =
+            new EventCodec<Integer>() {
+                @Override
+                public int encode(final Integer event, final MutableDirectBuffer buffer, final int offset) {
+                    buffer.putInt(offset, event);
+                    return Integer.BYTES;
+                }
+
+                @Override
+                public Integer decode(final DirectBuffer buffer, final int offset, final int length) {
+                    return buffer.getInt(offset);
+                }
+            };
+        final FiniteDuration interval = FiniteDuration.create(20, TimeUnit.MILLISECONDS);
+
+        final ManualEventStream<Integer> s0 = new ManualEventStream<>();
+        final ManualEventStream<Integer> s1 = new ManualEventStream<>();
+        final TestSubscriber.Probe<String> probe =
+            AkkaStreams.combineLatestCheckpointed(
+                Arrays.asList(s0.observe(), s1.observe()),
+                array -> String.format("%s:%s", array[0], array[1]),
+                new CombineLatestCheckpoint<>(file, 1024, codec, interval, FiniteDuration.create(1, TimeUnit.MINUTES))
+            )
+                .runWith(TestSink.probe(actorSystem), materializer);
+
+        s0.insert(1);
+        s1.insert(2);
+        probe.request(1).expectNext("1:2");
+        Thread.sleep(200);
+        probe.cancel();
+
+        // Restarted graph resumes from the snapshot without any input producing
+        final ManualEventStream<Integer> r0 = new ManualEventStream<>();
+        final ManualEventStream<Integer> r1 = new ManualEventStream<>();
+        final TestSubscriber.Probe<String> restarted =
+            AkkaStreams.combineLatestCheckpointed(
+                Arrays.asList(r0.observe(), r1.observe()),
+                array -> String.format("%s:%s", array[0], array[1]),
+                new CombineLatestCheckpoint<>(file, 1024, codec, interval, FiniteDuration.create(1, TimeUnit.MINUTES))
+            )
+                .runWith(TestSink.probe(actorSystem), materializer);
+
+        restarted.request(1).expectNext("1:2");
+        r1.insert(3);
+        restarted.request(1).expectNext("1:3");
+        restarted.cancel();
+
+        // Stale snapshot is ignored
+        final ManualEventStream<Integer> x0 = new ManualEventStream<>();
+        final ManualEventStream<Integer> x1 = new ManualEventStream<>();
+        final TestSubscriber.Probe<String> stale =
+            AkkaStreams.combineLatestCheckpointed(
+                Arrays.asList(x0.observe(), x1.observe()),
+                array -> String.format("%s:%s", array[0], array[1]),
+                new CombineLatestCheckpoint<>(file, 1024, codec, interval, FiniteDuration.create(-1, TimeUnit.MILLISECONDS))
+            )
+                .runWith(TestSink.probe(actorSystem), materializer);
+
+        stale.request(1).expectNoMsg(FiniteDuration.create(100, TimeUnit.MILLISECONDS));
+        stale.cancel();
+    }
+
+    @Test
+    public void testCombineLatestCheckpointIgnoresCorruptSnapshot() throws Exception {
+        final File file = File.createTempFile("combine-latest", ".snapshot");
+        file.deleteOnExit();
+
+        final EventCodec<Integer> codec =
+            new EventCodec<Integer>() {
+                @Override
+                public int encode(final Integer event, final MutableDirectBuffer buffer, final int offset) {
+                    buffer.putInt(offset, event);
+                    return Integer.BYTES;
+                }
+
+                @Override
+                public Integer decode(final DirectBuffer buffer, final int offset, final int length) {
+                    if (length != Integer.BYTES) {
+                        throw new IllegalArgumentException("Bad length " + length);
+                    }
+                    return buffer.getInt(offset);
+                }
+            };
+        final CombineLatestCheckpoint<Integer> checkpoint =
+            new CombineLatestCheckpoint<>(
+                file,
+                1024,
+                codec,
+                FiniteDuration.create(20, TimeUnit.MILLISECONDS),
+                FiniteDuration.create(1, TimeUnit.MINUTES)
+            );
+
+        try (final CombineLatestCheckpoint<Integer>.SnapshotFile snapshot = checkpoint.open()) {
+            snapshot.save(new Object[]{1, 2});
+            assertEquals(Arrays.asList(1, 2), Arrays.asList(snapshot.restore(2)));
+        }
+
+        // First slot length, in the first region after the file header, runs past the region. Native byte order.
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(8 + 12);
+            raf.writeInt(Integer.reverseBytes(1_000_000));
+        }
+        try (final CombineLatestCheckpoint<Integer>.SnapshotFile snapshot = checkpoint.open()) {
+            assertNull(snapshot.restore(2));
+        }
+
+        // In range, but rejected by the codec
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(8 + 12);
+            raf.writeInt(Integer.reverseBytes(2));
+        }
+        try (final CombineLatestCheckpoint<Integer>.SnapshotFile snapshot = checkpoint.open()) {
+            assertNull(snapshot.restore(2));
+        }
+
+        // The stream starts afresh rather than failing
+        final ManualEventStream<Integer> s0 = new ManualEventStream<>();
+        final ManualEventStream<Integer> s1 = new ManualEventStream<>();
+        final TestSubscriber.Probe<String> probe =
+            AkkaStreams.combineLatestCheckpointed(
+                Arrays.asList(s0.observe(), s1.observe()),
+                array -> String.format("%s:%s", array[0], array[1]),
+                checkpoint
+            )
+                .runWith(TestSink.probe(actorSystem), materializer);
+        probe.request(1);
+        s0.insert(3);
+        s1.insert(4);
+        probe.expectNext("3:4");
+        probe.cancel();
+    }
+
+    @Test
+    public void testCombineLatestBlueprint() throws Exception {
+        final CombineLatestBlueprint<Integer, String> blueprint =
+            AkkaStreams.combineLatestBlueprint(3, array -> String.format("%s:%s:%s", array[0], array[1], array[2]));
+
+        // Same blueprint materialized repeatedly
+        for (int run = 0; run < 2; run++) {
+            final ManualEventStream<Integer> s0 = new ManualEventStream<>();
+            final ManualEventStream<Integer> s1 = new ManualEventStream<>();
+            final ManualEventStream<Integer> s2 = new ManualEventStream<>();
+
+            final TestSubscriber.Probe<String> probe =
+                blueprint.source(Arrays.asList(s0.observe(), s1.observe(), s2.observe()))
+                    .runWith(TestSink.probe(actorSystem), materializer);
+
+            s0.insert(1);
+            s1.insert(2);
+            s2.insert(3);
+            probe.request(1).expectNext("1:2:3");
+
+            s0.insert(4);
+            probe.request(1).expectNext("4:2:3");
+            s2.insert(5);
+            probe.request(1).expectNext("4:2:5");
+
+            s1.insert(6);
+            s2.insert(7);
+            probe.request(2).expectNext("4:6:5", "4:6:7");
+        }
+    }
+
+    @Test
+    public void testManualEventStreamComplete() throws Exception {
+        final ManualEventStream<Integer> s0 = new ManualEventStream<>();
+
+        final TestSubscriber.Probe<Integer> probe =
+            s0.observe().runWith(TestSink.probe(actorSystem), materializer);
+
+        s0.insert(1, 2);
+        s0.complete();
+        probe.request(2).expectNext(1, 2);
+        probe.expectComplete();
+    }
 }
@@ -0,0 +1,77 @@
+package au.leighperry.streams;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Compares the cost of building and materializing many short-lived combineLatest() graphs against reusing a
+ * {@link CombineLatestBlueprint}. Each graph combines single-element sources, so setup dominates. Run main().
+ */
+public class CombineLatestBlueprintBenchmark {
+    private static final int ARITY = 8;
+    private static final int GRAPHS = 2_000;
+    private static final int BATCH = 100;
+    private static final int ROUNDS = 5;
+
+    public static void main(final String[] args) throws Exception {
+        final ActorSystem actorSystem = ActorSystem.create();
+        final ActorMaterializer materializer = ActorMaterializer.create(actorSystem);
+
+        final AkkaStreams.FunctionN<Integer> sum =
+            array -> {
+                int total = 0;
+                for (final Object o : array) {
+                    total += (Integer) o;
+                }
+                return total;
+            };
+        final CombineLatestBlueprint<Integer, Integer> blueprint = AkkaStreams.combineLatestBlueprint(ARITY, sum);
+
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                final double combineLatestMicros =
+                    run(sources -> AkkaStreams.combineLatest(sources, sum), materializer);
+                final double blueprintMicros =
+                    run(blueprint::source, materializer);
+
+                System.out.printf(
+                    "round %d: combineLatest %.1f us/graph, blueprint %.1f us/graph (%.2fx)%n",
+                    round, combineLatestMicros, blueprintMicros, combineLatestMicros / blueprintMicros
+                );
+            }
+        } finally {
+            actorSystem.terminate();
+        }
+    }
+
+    /** @return mean microseconds to build, materialize and run one graph to completion */
+    private static double run(
+        final Function<List<Source<Integer, NotUsed>>, Source<Integer, NotUsed>> combine,
+        final ActorMaterializer materializer
+    ) throws Exception {
+        final long start = System.nanoTime();
+        for (int i = 0; i < GRAPHS; i += BATCH) {
+            final List<CompletableFuture<Integer>> results = new ArrayList<>(BATCH);
+            for (int b = 0; b < BATCH; b++) {
+                final List<Source<Integer, NotUsed>> sources = new ArrayList<>(ARITY);
+                for (int s = 0; s < ARITY; s++) {
+                    sources.add(Source.single(s));
+                }
+                results.add(combine.apply(sources).runWith(Sink.head(), materializer).toCompletableFuture());
+            }
+            for (final CompletableFuture<Integer> result : results) {
+                result.get(10, TimeUnit.SECONDS);
+            }
+        }
+        return (System.nanoTime() - start) / 1e3 / GRAPHS;
+    }
+}
@@ -0,0 +1,205 @@
+package au.leighperry.streams;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.stream.testkit.TestSubscriber;
+import akka.stream.testkit.javadsl.TestSink;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IpcEventStreamTest {
+    private static ActorSystem actorSystem;
+    private static ActorMaterializer materializer;
+
+    private static final EventCodec<Integer> INT_CODEC =
+        new EventCodec<Integer>() {
+            @Override
+            public int encode(final Integer event, final MutableDirectBuffer buffer, final int offset) {
+                buffer.putInt(offset, event);
+                return Integer.BYTES;
+            }
+
+            @Override
+            public Integer decode(final DirectBuffer buffer, final int offset, final int length) {
+                return buffer.getInt(offset);
+            }
+        };
+
+    @BeforeClass
+    public static void setup() {
+        actorSystem = ActorSystem.create();
+        materializer = ActorMaterializer.create(actorSystem);
+    }
+
+    @Test
+    public void testPublishAcrossSharedFile() throws Exception {
+        final File file = File.createTempFile("ipc-event-stream", ".dat");
+        file.deleteOnExit();
+
+        try (
+            final IpcEventStream<Integer> stream = new IpcEventStream<>(file, 4096, INT_CODEC);
+            final IpcEventPublisher<Integer> publisher = new IpcEventPublisher<>(file, INT_CODEC)
+        ) {
+            // Written before materialization, retained in the ring buffer
+            publisher.insert(1, 2);
+
+            final Source<Integer, NotUsed> source = stream.observe();
+            final TestSubscriber.Probe<Integer> probe = source.runWith(TestSink.probe(actorSystem), materializer);
+
+            probe.request(2).expectNext(1, 2);
+
+            publisher.insert(3, 4, 5);
+            probe.request(3).expectNext(3, 4, 5);
+
+            probe.cancel();
+        }
+    }
+
+    @Test
+    public void testSecondMaterializationRejected() throws Exception {
+        final File file = File.createTempFile("ipc-event-stream", ".dat");
+        file.deleteOnExit();
+
+        try (
+            final IpcEventStream<Integer> stream = new IpcEventStream<>(file, 4096, INT_CODEC);
+            final IpcEventPublisher<Integer> publisher = new IpcEventPublisher<>(file, INT_CODEC)
+        ) {
+            final Source<Integer, NotUsed> source = stream.observe();
+            final TestSubscriber.Probe<Integer> probe = source.runWith(TestSink.probe(actorSystem), materializer);
+            final TestSubscriber.Probe<Integer> rejected = source.runWith(TestSink.probe(actorSystem), materializer);
+
+            assertTrue(rejected.expectSubscriptionAndError() instanceof IllegalStateException);
+
+            publisher.insert(1, 2);
+            probe.request(2).expectNext(1, 2);
+            probe.cancel();
+        }
+    }
+
+    @Test
+    public void testRestartedConsumerReusesFile() throws Exception {
+        final File file = File.createTempFile("ipc-event-stream", ".dat");
+        file.deleteOnExit();
+
+        final IpcEventStream<Integer> first = new IpcEventStream<>(file, 4096, INT_CODEC);
+        try (final IpcEventPublisher<Integer> publisher = new IpcEventPublisher<>(file, INT_CODEC)) {
+            publisher.insert(1, 2);
+            final TestSubscriber.Probe<Integer> probe = first.observe().runWith(TestSink.probe(actorSystem), materializer);
+            probe.request(1).expectNext(1);
+            probe.cancel();
+            first.close();
+
+            // The publisher stays attached across the consumer restart
+            try (final IpcEventStream<Integer> second = new IpcEventStream<>(file, 4096, INT_CODEC)) {
+                publisher.insert(3);
+                final TestSubscriber.Probe<Integer> restarted =
+                    second.observe().runWith(TestSink.probe(actorSystem), materializer);
+                restarted.request(2).expectNext(2, 3);
+                restarted.cancel();
+            }
+        }
+    }
+
+    @Test
+    public void testPublisherDetectsFullAndClosedConsumer() throws Exception {
+        final File file = File.createTempFile("ipc-event-stream", ".dat");
+        file.deleteOnExit();
+
+        final IpcEventStream<Integer> stream = new IpcEventStream<>(file, 1024, INT_CODEC);
+        try (final IpcEventPublisher<Integer> publisher = new IpcEventPublisher<>(file, INT_CODEC)) {
+            assertTrue(publisher.getConsumerHeartbeatTime() != IpcSubscription.NO_CONSUMER);
+
+            int written = 0;
+            while (publisher.offer(written)) {
+                ++written;
+            }
+            assertFalse(publisher.offer(written, 20, TimeUnit.MILLISECONDS));
+
+            stream.close();
+            assertEquals(IpcSubscription.NO_CONSUMER, publisher.getConsumerHeartbeatTime());
+            try {
+                publisher.insert(written);
+                fail("Expected insert to give up once the consumer closed");
+            } catch (final IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testCancelMidBatchLeavesRestInRing() throws Exception {
+        final File file = File.createTempFile("ipc-event-stream", ".dat");
+        file.deleteOnExit();
+
+        final IpcEventStream<Integer> first = new IpcEventStream<>(file, 4096, INT_CODEC);
+        try (final IpcEventPublisher<Integer> publisher = new IpcEventPublisher<>(file, INT_CODEC)) {
+            publisher.insert(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+
+            // Requests the whole backlog up front, so it is read as one batch, then cancels partway through it
+            final List<Integer> received = new CopyOnWriteArrayList<>();
+            first.observe().runWith(
+                Sink.fromSubscriber(
+                    new Subscriber<Integer>() {
+                        private Subscription subscription;
+
+                        @Override
+                        public void onSubscribe(final Subscription s) {
+                            subscription = s;
+                            s.request(10);
+                        }
+
+                        @Override
+                        public void onNext(final Integer e) {
+                            received.add(e);
+                            if (received.size() == 3) {
+                                subscription.cancel();
+                            }
+                        }
+
+                        @Override
+                        public void onError(final Throwable t) {
+                        }
+
+                        @Override
+                        public void onComplete() {
+                        }
+                    }
+                ),
+                materializer
+            );
+
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+            while (received.size() < 3) {
+                assertTrue("Expected first events", System.nanoTime() < deadline);
+                Thread.sleep(1);
+            }
+            first.close();
+            assertEquals(Arrays.asList(1, 2, 3), received);
+
+            try (final IpcEventStream<Integer> second = new IpcEventStream<>(file, 4096, INT_CODEC)) {
+                final TestSubscriber.Probe<Integer> restarted =
+                    second.observe().runWith(TestSink.probe(actorSystem), materializer);
+                restarted.request(7).expectNext(4, 5, 6, 7, 8, 9, 10);
+                restarted.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package au.leighperry.streams;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamsBufferedSubscriptionTest {
+
+    @Test
+    public void testOfferAsyncWaitsForDemand() throws Exception {
+        final RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        final StreamsBufferedSubscription<Integer> subscription = new StreamsBufferedSubscription<>(subscriber);
+
+        final CompletableFuture<Void> first = subscription.offerAsync(1);
+        final CompletableFuture<Void> second = subscription.offerAsync(2);
+        assertFalse(first.isDone());
+
+        subscription.request(1);
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(asList(1), subscriber.received);
+
+        subscription.request(1);
+        assertTrue(second.isDone());
+        assertEquals(asList(1, 2), subscriber.received);
+    }
+
+    @Test
+    public void testOfferAsyncAcceptsIntoBuffer() throws Exception {
+        final RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        final StreamsBufferedSubscription<Integer> subscription = new StreamsBufferedSubscription<>(subscriber, 2);
+
+        final CompletableFuture<Void> first = subscription.offerAsync(1);
+        final CompletableFuture<Void> second = subscription.offerAsync(2);
+        final CompletableFuture<Void> third = subscription.offerAsync(3);
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertFalse(third.isDone());
+        assertTrue(subscriber.received.isEmpty());
+
+        subscription.request(1);
+        assertTrue(third.isDone());
+        assertEquals(asList(1), subscriber.received);
+    }
+
+    @Test(expected = CancellationException.class)
+    public void testCancelReleasesWaitingProducers() throws Exception {
+        final StreamsBufferedSubscription<Integer> subscription =
+            new StreamsBufferedSubscription<>(new RecordingSubscriber<>());
+
+        final CompletableFuture<Void> pending = subscription.offerAsync(1);
+        subscription.cancel();
+
+        pending.join();
+    }
+
+    @Test
+    public void testCancelReleasesQueue() throws Exception {
+        final RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        final StreamsBufferedSubscription<Integer> subscription = new StreamsBufferedSubscription<>(subscriber);
+
+        subscription.offer(1);
+        subscription.offer(2);
+        subscription.offer(3);
+        final CompletableFuture<Void> pending = subscription.offerAsync(4);
+        assertEquals(3, subscription.getQueuedCount());
+
+        subscription.cancel();
+        assertEquals(0, subscription.getQueuedCount());
+        assertEquals(4, subscription.getReleasedCount());
+        assertTrue(pending.isCompletedExceptionally());
+
+        assertFalse(subscription.offer(5));
+        subscription.request(1);
+        assertTrue(subscriber.received.isEmpty());
+    }
+
+    @Test
+    public void testCompleteAfterQueuedPublished() throws Exception {
+        final RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        final StreamsBufferedSubscription<Integer> subscription = new StreamsBufferedSubscription<>(subscriber);
+
+        subscription.offer(1);
+        subscription.offer(2);
+        subscription.complete();
+        assertFalse(subscription.offer(3));
+        assertFalse(subscriber.completed);
+
+        subscription.request(1);
+        assertFalse(subscriber.completed);
+
+        subscription.request(1);
+        assertEquals(asList(1, 2), subscriber.received);
+        assertTrue(subscriber.completed);
+        assertFalse(subscription.isSubscribed());
+    }
+
+    @Test
+    public void testFailAfterQueuedPublished() throws Exception {
+        final RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        final StreamsBufferedSubscription<Integer> subscription = new StreamsBufferedSubscription<>(subscriber);
+
+        final RuntimeException failure = new RuntimeException("failed");
+        subscription.offer(1);
+        subscription.fail(failure);
+        assertNull(subscriber.error);
+
+        subscription.request(1);
+        assertEquals(asList(1), subscriber.received);
+        assertSame(failure, subscriber.error);
+        assertFalse(subscriber.completed);
+    }
+
+    @Test
+    public void testOfferRacingCompleteIsPublishedOrRejected() throws Exception {
+        for (int run = 0; run < 200; run++) {
+            final RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+            final StreamsBufferedSubscription<Integer> subscription = new StreamsBufferedSubscription<>(subscriber);
+            subscription.request(Long.MAX_VALUE);
+
+            final AtomicInteger accepted = new AtomicInteger();
+            final Thread producer =
+                new Thread(
+                    () -> {
+                        for (int i = 0; i < 1000; i++) {
+                            if (subscription.offer(i)) {
+                                accepted.incrementAndGet();
+                            }
+                        }
+                    }
+                );
+            producer.start();
+            subscription.complete();
+            producer.join();
+
+            assertTrue(subscriber.completed);
+            assertEquals(accepted.get(), subscriber.received.size());
+            assertEquals(0, subscription.getReleasedCount());
+        }
+    }
+
+    @Test
+    public void testOfferAsyncAfterCompleteRejectedAsCompleted() throws Exception {
+        final RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        final StreamsBufferedSubscription<Integer> subscription = new StreamsBufferedSubscription<>(subscriber);
+
+        subscription.offer(1);
+        subscription.complete();
+        assertRejectedWith(IllegalStateException.class, subscription.offerAsync(2));
+
+        // Still rejected as completed, not cancelled, once completion has been signalled
+        subscription.request(1);
+        assertTrue(subscriber.completed);
+        assertRejectedWith(IllegalStateException.class, subscription.offerAsync(3));
+        assertEquals(0, subscription.getReleasedCount());
+
+        final StreamsBufferedSubscription<Integer> cancelled = new StreamsBufferedSubscription<>(subscriber);
+        cancelled.cancel();
+        assertRejectedWith(CancellationException.class, cancelled.offerAsync(1));
+    }
+
+    private static void assertRejectedWith(final Class<?> expected, final CompletableFuture<Void> future) {
+        try {
+            future.join();
+            fail("Expected offer to be rejected");
+        } catch (final CompletionException e) {
+            assertSame(expected, e.getCause().getClass());
+        } catch (final CancellationException e) {
+            assertSame(expected, e.getClass());
+        }
+    }
+
+    private static class RecordingSubscriber<T> implements Subscriber<T> {
+        final List<T> received = new ArrayList<>();
+        boolean completed;
+        Throwable error;
+
+        @Override
+        public void onSubscribe(final Subscription s) {
+        }
+
+        @Override
+        public void onNext(final T t) {
+            received.add(t);
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
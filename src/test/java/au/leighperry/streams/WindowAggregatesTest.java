@@ -0,0 +1,125 @@
+package au.leighperry.streams;
+
+import akka.actor.ActorSystem;
+import akka.japi.Pair;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class WindowAggregatesTest {
+    private static final double EPSILON = 1e-9;
+
+    private static ActorSystem actorSystem;
+    private static ActorMaterializer materializer;
+
+    @BeforeClass
+    public static void setup() {
+        actorSystem = ActorSystem.create();
+        materializer = ActorMaterializer.create(actorSystem);
+    }
+
+    @Test
+    public void testSlidingCount() throws Exception {
+        final List<WindowStats> stats =
+            run(asList(3.0, 1.0, 4.0, 1.0, 5.0), WindowAggregates.slidingCount(3, Double::doubleValue));
+
+        assertEquals(3, stats.size());
+        assertStats(stats.get(0), 3, 8.0, 1.0, 4.0);
+        assertStats(stats.get(1), 3, 6.0, 1.0, 4.0);
+        assertStats(stats.get(2), 3, 10.0, 1.0, 5.0);
+    }
+
+    @Test
+    public void testTumblingCount() throws Exception {
+        final List<WindowStats> stats =
+            run(asList(3.0, 1.0, 4.0, 1.0, 5.0), WindowAggregates.tumblingCount(2, Double::doubleValue));
+
+        // Final partial window is emitted on completion
+        assertEquals(3, stats.size());
+        assertStats(stats.get(0), 2, 4.0, 1.0, 3.0);
+        assertStats(stats.get(1), 2, 5.0, 1.0, 4.0);
+        assertStats(stats.get(2), 1, 5.0, 5.0, 5.0);
+    }
+
+    @Test
+    public void testSlidingTimeWeighted() throws Exception {
+        // (timestamp, price, volume)
+        final List<double[]> trades =
+            asList(
+                new double[] { 0, 10.0, 100 },
+                new double[] { 5, 11.0, 300 },
+                new double[] { 12, 12.0, 100 }
+            );
+
+        final List<WindowStats> stats =
+            run(trades, WindowAggregates.slidingTime(10, 16, t -> (long) t[0], t -> t[1], t -> t[2]));
+
+        assertEquals(3, stats.size());
+        assertEquals(10.75, stats.get(1).getWeightedMean(), EPSILON);
+        // First trade has aged out of the window (2, 12]
+        assertStats(stats.get(2), 2, 23.0, 11.0, 12.0);
+        assertEquals(11.25, stats.get(2).getWeightedMean(), EPSILON);
+    }
+
+    @Test
+    public void testTumblingTime() throws Exception {
+        final List<Pair<Long, Double>> ticks =
+            asList(
+                Pair.create(1L, 2.0),
+                Pair.create(9L, 4.0),
+                Pair.create(10L, 7.0),
+                Pair.create(25L, 1.0),
+                Pair.create(29L, 3.0)
+            );
+
+        final List<WindowStats> stats =
+            run(ticks, WindowAggregates.tumblingTime(10, 16, Pair::first, Pair::second));
+
+        assertEquals(3, stats.size());
+        assertStats(stats.get(0), 2, 6.0, 2.0, 4.0);
+        assertStats(stats.get(1), 1, 7.0, 7.0, 7.0);
+        assertStats(stats.get(2), 2, 4.0, 1.0, 3.0);
+        assertEquals(25L, stats.get(2).getStartTimestamp());
+    }
+
+    @Test
+    public void testDoubleWindowMinMaxAcrossWrap() {
+        final DoubleWindow window = new DoubleWindow(3);
+        final double[] values = { 5, 3, 8, 1, 9, 2, 7, 6 };
+        for (int i = 0; i < values.length; i++) {
+            if (window.size() == 3) {
+                window.evictOldest();
+            }
+            window.add(i, values[i], 1);
+        }
+
+        // Window now holds 2, 7, 6
+        assertEquals(2.0, window.min(), EPSILON);
+        assertEquals(7.0, window.max(), EPSILON);
+        assertEquals(15.0, window.sum(), EPSILON);
+    }
+
+    private static <T> List<WindowStats> run(final List<T> elements, final Flow<T, WindowStats, ?> flow) throws Exception {
+        return Source.from(elements)
+            .via(flow)
+            .runWith(Sink.seq(), materializer)
+            .toCompletableFuture()
+            .get(3, TimeUnit.SECONDS);
+    }
+
+    private static void assertStats(final WindowStats stats, final int count, final double sum, final double min, final double max) {
+        assertEquals(count, stats.getCount());
+        assertEquals(sum, stats.getSum(), EPSILON);
+        assertEquals(min, stats.getMin(), EPSILON);
+        assertEquals(max, stats.getMax(), EPSILON);
+    }
+}